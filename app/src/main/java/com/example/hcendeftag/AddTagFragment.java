@@ -16,6 +16,9 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.devhjz.ndefemulator.compiler.CompiledImage;
+import com.devhjz.ndefemulator.compiler.NdefCompileException;
+import com.devhjz.ndefemulator.compiler.TagSavePipeline;
 import com.devhjz.ndefemulator.database.NdefTagDatabase;
 import com.devhjz.ndefemulator.databinding.FragmentAddTagBinding;
 import com.devhjz.ndefemulator.model.NdefTag;
@@ -29,11 +32,13 @@ public class AddTagFragment extends Fragment {
     private List<NdefTag.NdefRecordItem> records = new ArrayList<>();
     private RecordAdapter recordAdapter;
     private NdefTagDatabase database;
+    private TagSavePipeline savePipeline;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentAddTagBinding.inflate(inflater, container, false);
         database = new NdefTagDatabase(requireContext());
+        savePipeline = new TagSavePipeline(requireContext(), database);
 
         setupRecyclerView();
 
@@ -93,11 +98,33 @@ public class AddTagFragment extends Fragment {
 
         NdefTag tag = new NdefTag(name);
         tag.setRecords(new ArrayList<>(records));
-        database.insertNdefTag(tag);
-
-        if (getActivity() instanceof MainActivity) {
-            ((MainActivity) getActivity()).onTagSaved();
+        tag.setEncrypted(binding.cbEncrypted.isChecked());
+        String folder = binding.etFolder.getText().toString().trim();
+        tag.setFolderName(folder.isEmpty() ? null : folder);
+        for (String label : binding.etLabels.getText().toString().split("[,，\\s]+")) {
+            if (!label.isEmpty() && !tag.getLabels().contains(label)) {
+                tag.getLabels().add(label);
+            }
         }
+
+        // 校验、编译与写库在后台完成，结果异步返回
+        binding.btnSave.setEnabled(false);
+        savePipeline.save(tag, new TagSavePipeline.Callback() {
+            @Override
+            public void onSaved(NdefTag saved, CompiledImage image) {
+                if (binding == null) return;
+                if (getActivity() instanceof MainActivity) {
+                    ((MainActivity) getActivity()).onTagSaved();
+                }
+            }
+
+            @Override
+            public void onError(NdefCompileException error) {
+                if (binding == null) return;
+                binding.btnSave.setEnabled(true);
+                Toast.makeText(requireContext(), error.getMessage(), Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private class RecordAdapter extends RecyclerView.Adapter<RecordAdapter.ViewHolder> {
@@ -8,9 +8,24 @@ import android.nfc.cardemulation.HostApduService;
 import android.os.Bundle;
 import android.util.Log;
 
+import com.devhjz.ndefemulator.analytics.TapEvent;
+import com.devhjz.ndefemulator.analytics.TapLogger;
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.database.NdefImageFiles;
 import com.devhjz.ndefemulator.database.NdefTagDatabase;
+import com.devhjz.ndefemulator.hce.ApduTransport;
+import com.devhjz.ndefemulator.hce.ImageCache;
+import com.devhjz.ndefemulator.hce.MappedFile;
+import com.devhjz.ndefemulator.hce.ReaderProfile;
+import com.devhjz.ndefemulator.hce.ReaderProfileStore;
+import com.devhjz.ndefemulator.hce.ReaderSession;
+import com.devhjz.ndefemulator.hce.ResponseSlices;
 import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.security.TagCipher;
 
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
 /**
@@ -19,6 +34,8 @@ import java.util.Arrays;
 public class NdefHceService extends HostApduService {
 
     public static final ComponentName COMPONENT = new ComponentName("com.devhjz.ndefemulator", NdefHceService.class.getName());
+    // 标签被删除时清除其解密后的镜像缓存
+    public static final String EXTRA_INVALIDATE_HASH = "invalidate_hash";
     private final static String TAG = "NdefHceService";
 
     // ISO-DEP APDU 指令集
@@ -36,45 +53,82 @@ public class NdefHceService extends HostApduService {
             (byte) 0x00, (byte) 0xa4, (byte) 0x00, (byte) 0x0c, (byte) 0x02, (byte) 0xE1, (byte) 0x04
     };
 
-    // NDEF 能力容器文件 (CC File)
+    // NDEF 能力容器文件 (CC File)，MLe 按读卡器配置在 buildCapabilityContainer 中改写
     private final static byte[] CAPABILITY_CONTAINER_FILE = new byte[]{
             0x00, 0x0f, // CCLEN
             0x20, // Mapping Version
-            0x00, 0x3b, // Maximum R-APDU data size
+            0x00, 0x3b, // Maximum R-APDU data size (MLe)
             0x00, 0x34, // Maximum C-APDU data size
             0x04, 0x06, // Tag & Length
             (byte) 0xe1, 0x04, // NDEF File Identifier
-            (byte) 0x04, (byte) 0x00, // Maximum NDEF size (1024 bytes)
+            (byte) 0x04, (byte) 0x00, // Maximum NDEF size (至少 1024 bytes，大镜像时按实际大小)
             0x00, // NDEF file read access granted
             (byte) 0xff, // NDEF File write access denied
     };
 
     private final static byte[] SUCCESS_SW = new byte[]{(byte) 0x90, (byte) 0x00};
     private final static byte[] FAILURE_SW = new byte[]{(byte) 0x6a, (byte) 0x82};
+    private final static byte ODO_OFFSET_TAG = 0x54;
     
-    private byte[] mNdefRecordFile;
+    private static final int CC_MLE_OFFSET = 3;
+    private static final int CC_MAX_NDEF_SIZE_OFFSET = 11;
+    private static final int MIN_MAX_NDEF_SIZE = 0x0400;
+    private static final int MAX_MAX_NDEF_SIZE = NdefTagCompiler.MAX_NDEF_FILE_SIZE;
+
+    // 小镜像保存在堆上，大镜像以内存映射文件提供，加密镜像解密一次后缓存；按内容哈希缓存，相同内容的标签共享
+    private final ImageCache mImageCache = new ImageCache();
+    private ResponseSlices mNdefSlices;
+    private ResponseSlices mCcSlices;
+    private ResponseSlices mDefaultCcSlices = new ResponseSlices(buildCapabilityContainer(ReaderProfile.DEFAULT_MLE, MIN_MAX_NDEF_SIZE));
+    private ResponseSlices mMaxCcSlices = new ResponseSlices(buildCapabilityContainer(ReaderProfile.MAX_MLE, MIN_MAX_NDEF_SIZE));
     private boolean mAppSelected;
     private boolean mCcSelected;
     private boolean mNdefSelected;
     private NdefTagDatabase database;
+    // 命令链与 GET RESPONSE 由传输层处理，onCommand 只处理完整的 Type 4 指令
+    private final ApduTransport mTransport = new ApduTransport(this::onCommand);
+
+    // 读卡器指纹与学习到的配置
+    private ReaderProfileStore mProfileStore;
+    private ReaderSession mSession;
+    private ReaderProfile mProfile;
+    private int mAdvertisedMle = ReaderProfile.DEFAULT_MLE;
+
+    // 当前模拟的标签 ID（-1 表示内置提示消息）及读卡统计
+    private long mCurrentTagId = -1;
+    private TapLogger mTapLogger;
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "HCE Service Created");
         database = new NdefTagDatabase(this);
+        mProfileStore = new ReaderProfileStore(this);
+        mTapLogger = new TapLogger(this);
+        mCcSlices = mDefaultCcSlices;
         loadDefaultNdefTag();
     }
 
+    /**
+     * 生成声明指定 MLe 与最大 NDEF 文件长度的 CC 文件
+     */
+    private static byte[] buildCapabilityContainer(int mle, int maxNdefSize) {
+        byte[] cc = CAPABILITY_CONTAINER_FILE.clone();
+        cc[CC_MLE_OFFSET] = (byte) ((mle >> 8) & 0xff);
+        cc[CC_MLE_OFFSET + 1] = (byte) (mle & 0xff);
+        cc[CC_MAX_NDEF_SIZE_OFFSET] = (byte) ((maxNdefSize >> 8) & 0xff);
+        cc[CC_MAX_NDEF_SIZE_OFFSET + 1] = (byte) (maxNdefSize & 0xff);
+        return cc;
+    }
+
     /**
      * 加载默认标签或初始欢迎消息
      */
     private void loadDefaultNdefTag() {
-        NdefTag defaultTag = database.getDefaultNdefTag();
+        NdefTag defaultTag = database.getDefaultNdefTag(false);
         if (defaultTag != null) {
-            byte[] ndefBytes = defaultTag.toNdefBytes();
-            if (ndefBytes != null) {
-                initializeNdefRecordFile(ndefBytes);
+            if (loadNdefTag(defaultTag)) {
+                mCurrentTagId = defaultTag.getId();
                 Log.d(TAG, "Loaded default tag: " + defaultTag.getName());
             } else {
                 updateNdefFromText("标签内容为空");
@@ -88,30 +142,100 @@ public class NdefHceService extends HostApduService {
         NdefRecord record = NdefRecord.createTextRecord("zh", text);
         NdefMessage msg = new NdefMessage(record);
         initializeNdefRecordFile(msg.toByteArray());
+        mCurrentTagId = -1;
+    }
+
+    /**
+     * 加载标签的编译镜像，优先使用缓存；大镜像直接映射私有文件而不读入堆
+     */
+    private boolean loadNdefTag(NdefTag tag) {
+        String hash = tag.getContentHash();
+        if (hash != null) {
+            ResponseSlices slices = mImageCache.get(hash);
+            if (slices == null) {
+                slices = openImage(tag);
+                if (slices == null) return false;
+                mImageCache.put(hash, slices);
+            }
+            setNdefSlices(slices);
+            return true;
+        }
+        // 旧数据没有编译镜像
+        byte[] ndefBytes = tag.toNdefBytes();
+        if (ndefBytes == null) return false;
+        initializeNdefRecordFile(ndefBytes);
+        return true;
+    }
+
+    private ResponseSlices openImage(NdefTag tag) {
+        String hash = tag.getContentHash();
+        // 以数据库中的 encrypted 列为准，不根据哈希猜测
+        boolean encrypted = tag.isEncrypted();
+        if (!encrypted && NdefImageFiles.isLarge(tag.getNdefSize())) {
+            File file = NdefImageFiles.fileFor(this, hash);
+            try {
+                return new ResponseSlices(new MappedFile(file));
+            } catch (IOException e) {
+                Log.e(TAG, "Error mapping NDEF image " + file, e);
+                return null;
+            }
+        }
+        byte[] image = tag.getNdefImage() != null ? tag.getNdefImage() : database.getNdefImage(hash);
+        if (image == null) return null;
+        if (!encrypted) {
+            return new ResponseSlices(buildNdefFile(image));
+        }
+        byte[] plain;
+        try {
+            plain = TagCipher.getInstance(this).decrypt(image);
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Error decrypting NDEF image " + hash, e);
+            return null;
+        }
+        // 只保留缓存中的一份明文
+        try {
+            return new ResponseSlices(buildNdefFile(plain));
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
     }
 
     private void initializeNdefRecordFile(byte[] ndefBytes) {
         if (ndefBytes == null) return;
+        setNdefSlices(new ResponseSlices(buildNdefFile(ndefBytes)));
+    }
+
+    private static byte[] buildNdefFile(byte[] ndefBytes) {
         int nlen = ndefBytes.length;
         // NDEF 文件前两个字节是长度
-        mNdefRecordFile = new byte[nlen + 2];
-        mNdefRecordFile[0] = (byte) ((nlen & 0xff00) / 256);
-        mNdefRecordFile[1] = (byte) (nlen & 0xff);
-        System.arraycopy(ndefBytes, 0, mNdefRecordFile, 2, nlen);
+        byte[] ndefRecordFile = new byte[nlen + 2];
+        ndefRecordFile[0] = (byte) ((nlen & 0xff00) / 256);
+        ndefRecordFile[1] = (byte) (nlen & 0xff);
+        System.arraycopy(ndefBytes, 0, ndefRecordFile, 2, nlen);
+        return ndefRecordFile;
+    }
+
+    private void setNdefSlices(ResponseSlices slices) {
+        mNdefSlices = slices;
+        mImageCache.setActive(slices);
+        int maxNdefSize = Math.max(MIN_MAX_NDEF_SIZE, Math.min(slices.length(), MAX_MAX_NDEF_SIZE));
+        mDefaultCcSlices = new ResponseSlices(buildCapabilityContainer(ReaderProfile.DEFAULT_MLE, maxNdefSize));
+        mMaxCcSlices = new ResponseSlices(buildCapabilityContainer(ReaderProfile.MAX_MLE, maxNdefSize));
+        mCcSlices = mAdvertisedMle > ReaderProfile.DEFAULT_MLE ? mMaxCcSlices : mDefaultCcSlices;
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && intent.hasExtra(EXTRA_INVALIDATE_HASH)) {
+            mImageCache.remove(intent.getStringExtra(EXTRA_INVALIDATE_HASH));
+        }
         if (intent != null && intent.hasExtra("ndef_tag_id")) {
             long tagId = intent.getLongExtra("ndef_tag_id", -1);
             if (tagId != -1) {
-                NdefTag tag = database.getNdefTagById(tagId);
-                if (tag != null) {
-                    byte[] ndefBytes = tag.toNdefBytes();
-                    if (ndefBytes != null) {
-                        initializeNdefRecordFile(ndefBytes);
-                        Log.d(TAG, "NDEF content updated to: " + tag.getName());
-                    }
+                NdefTag tag = database.getNdefTagById(tagId, false);
+                if (tag != null && loadNdefTag(tag)) {
+                    mCurrentTagId = tag.getId();
+                    Log.d(TAG, "NDEF content updated to: " + tag.getName());
                 }
             }
         }
@@ -120,45 +244,121 @@ public class NdefHceService extends HostApduService {
 
     @Override
     public byte[] processCommandApdu(byte[] commandApdu, Bundle extras) {
+        return mTransport.process(commandApdu);
+    }
+
+    /**
+     * 处理一条完整的 C-APDU，命令数据位于 commandApdu[dataOffset, dataOffset + lc)，ne 为读卡器期望的最大响应长度
+     */
+    private byte[] onCommand(byte[] commandApdu, int dataOffset, int lc, int ne) {
+        if (mSession == null) {
+            mSession = new ReaderSession();
+        }
         if (Arrays.equals(SELECT_APPLICATION, commandApdu)) {
             mAppSelected = true;
             mCcSelected = false;
             mNdefSelected = false;
+            mSession.onSelect('A');
             return SUCCESS_SW;
         } else if (mAppSelected && Arrays.equals(SELECT_CAPABILITY_CONTAINER, commandApdu)) {
             mCcSelected = true;
             mNdefSelected = false;
+            mSession.onSelect('C');
             return SUCCESS_SW;
         } else if (mAppSelected && Arrays.equals(SELECT_NDEF_FILE, commandApdu)) {
             mCcSelected = false;
             mNdefSelected = true;
+            mSession.onSelect('N');
             return SUCCESS_SW;
-        } else if (commandApdu.length >= 4 && commandApdu[0] == (byte) 0x00 && commandApdu[1] == (byte) 0xb0) {
-            // READ_BINARY 指令
-            int offset = (0x00ff & commandApdu[2]) * 256 + (0x00ff & commandApdu[3]);
-            int le = (commandApdu.length > 4) ? (0x00ff & commandApdu[4]) : 0;
-
-            if (mCcSelected && offset < CAPABILITY_CONTAINER_FILE.length) {
-                int length = Math.min(le, CAPABILITY_CONTAINER_FILE.length - offset);
-                byte[] response = new byte[length + 2];
-                System.arraycopy(CAPABILITY_CONTAINER_FILE, offset, response, 0, length);
-                System.arraycopy(SUCCESS_SW, 0, response, length, 2);
+        } else if (commandApdu.length >= 4 && commandApdu[0] == (byte) 0x00 && commandApdu[1] == (byte) 0xb0
+                && (commandApdu[2] & 0x80) == 0) {
+            // READ_BINARY 指令；P1 最高位为 1 时表示短文件标识符（SFI），不支持
+            int offset = (0x007f & commandApdu[2]) * 256 + (0x00ff & commandApdu[3]);
+            int le = ne;
+
+            if (!mSession.isFingerprintComplete()) {
+                // 首个 READ_BINARY 时指纹已确定，据此选择 MLe 并预生成切片
+                mSession.onRead(mNdefSelected, offset, le);
+                applyReaderProfile(mProfileStore.get(mSession.getFingerprint()));
+            } else if (mCcSelected || mNdefSelected) {
+                mSession.onRead(mNdefSelected, offset, le);
+            }
+
+            byte[] response = null;
+            if (mCcSelected) {
+                response = mCcSlices.read(offset, le);
+            } else if (mNdefSelected && mNdefSlices != null) {
+                response = mNdefSlices.read(offset, le);
+            }
+            if (response != null) {
                 return response;
-            } else if (mNdefSelected && mNdefRecordFile != null && offset < mNdefRecordFile.length) {
-                int length = Math.min(le, mNdefRecordFile.length - offset);
-                byte[] response = new byte[length + 2];
-                System.arraycopy(mNdefRecordFile, offset, response, 0, length);
-                System.arraycopy(SUCCESS_SW, 0, response, length, 2);
+            }
+        } else if (mNdefSelected && mNdefSlices != null && lc == 5
+                && commandApdu[0] == (byte) 0x00 && commandApdu[1] == (byte) 0xb1
+                && commandApdu[dataOffset] == ODO_OFFSET_TAG && commandApdu[dataOffset + 1] == 0x03) {
+            // READ_BINARY (B1)：00 B1 00 00 Lc 54 03 o1 o2 o3 [Le]，Lc/Le 可为短或扩展格式，Le 缺省时按 256
+            int offset = ((0x00ff & commandApdu[dataOffset + 2]) << 16) | ((0x00ff & commandApdu[dataOffset + 3]) << 8)
+                    | (0x00ff & commandApdu[dataOffset + 4]);
+            int le = ne == 0 ? 256 : ne;
+            mSession.onRead(true, offset, le);
+            byte[] response = mNdefSlices.readOdo(offset, le);
+            if (response != null) {
                 return response;
             }
+        } else {
+            mSession.onUnknown(commandApdu);
         }
         return FAILURE_SW;
     }
 
+    private void applyReaderProfile(ReaderProfile profile) {
+        mProfile = profile;
+        mAdvertisedMle = profile.getPreferredMle();
+        mCcSlices = mAdvertisedMle > ReaderProfile.DEFAULT_MLE ? mMaxCcSlices : mDefaultCcSlices;
+        if (mNdefSlices != null) {
+            mNdefSlices.prepare(profile.getReadPattern());
+        }
+    }
+
     @Override
     public void onDeactivated(int reason) {
+        mTransport.reset();
         mAppSelected = false;
         mCcSelected = false;
         mNdefSelected = false;
+
+        if (mSession != null) {
+            boolean complete = mNdefSlices != null && mSession.isNdefReadComplete(mNdefSlices.length());
+            if (mProfile != null) {
+                mProfile.onSessionEnd(mSession, mAdvertisedMle, complete);
+                mProfileStore.save(mProfile);
+            }
+            if (mCurrentTagId > 0) {
+                TapEvent.Outcome outcome = complete ? TapEvent.Outcome.COMPLETE
+                        : mSession.getNdefReads() > 0 ? TapEvent.Outcome.PARTIAL : TapEvent.Outcome.ABORTED;
+                mTapLogger.log(new TapEvent(mCurrentTagId, System.currentTimeMillis(), outcome));
+            }
+        }
+        mSession = null;
+        mProfile = null;
+        mAdvertisedMle = ReaderProfile.DEFAULT_MLE;
+        mCcSlices = mDefaultCcSlices;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // 内存紧张时丢弃（并清零）缓存的镜像，正在模拟的标签不受影响
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            mImageCache.evictAll();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        mTapLogger.shutdown();
+        mImageCache.evictAll();
+        mImageCache.setActive(null);
+        super.onDestroy();
     }
 }
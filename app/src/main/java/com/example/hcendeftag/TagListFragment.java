@@ -1,25 +1,46 @@
 package com.devhjz.ndefemulator;
 
 import android.content.ComponentName;
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
 import android.nfc.cardemulation.CardEmulation;
 import android.os.Bundle;
+import android.provider.OpenableColumns;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.devhjz.ndefemulator.adapter.NdefTagAdapter;
 import com.devhjz.ndefemulator.database.NdefTagDatabase;
 import com.devhjz.ndefemulator.databinding.FragmentTagListBinding;
+import com.devhjz.ndefemulator.ingest.NdefImportPipeline;
 import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.model.TagFolder;
+import com.devhjz.ndefemulator.model.TagLabel;
+import com.devhjz.ndefemulator.model.TagStats;
 
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class TagListFragment extends Fragment implements NdefTagAdapter.OnTagActionListener {
 
@@ -27,14 +48,41 @@ public class TagListFragment extends Fragment implements NdefTagAdapter.OnTagAct
     private NdefTagDatabase database;
     private NdefTagAdapter adapter;
 
+    // 当前筛选条件，均为 0 时显示全部标签
+    private long filterFolderId;
+    private long filterLabelId;
+    private List<TagFolder> folders = new ArrayList<>();
+    private List<TagLabel> labels = new ArrayList<>();
+
+    // 通过系统文件选择器导入原始 NDEF 文件、十六进制转储或 zip 压缩包
+    private final ActivityResultLauncher<String[]> importLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), this::importFiles);
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentTagListBinding.inflate(inflater, container, false);
         database = new NdefTagDatabase(requireContext());
         
         setupRecyclerView();
+        setupFilter();
         loadTags();
 
+        requireActivity().addMenuProvider(new MenuProvider() {
+            @Override
+            public void onCreateMenu(@NonNull Menu menu, @NonNull MenuInflater menuInflater) {
+                menuInflater.inflate(R.menu.menu_tag_list, menu);
+            }
+
+            @Override
+            public boolean onMenuItemSelected(@NonNull MenuItem menuItem) {
+                if (menuItem.getItemId() == R.id.action_import) {
+                    importLauncher.launch(new String[]{"*/*"});
+                    return true;
+                }
+                return false;
+            }
+        }, getViewLifecycleOwner(), Lifecycle.State.RESUMED);
+
         binding.btnRegisterPayment.setOnClickListener(v -> {
             Intent intent = new Intent(CardEmulation.ACTION_CHANGE_DEFAULT);
             intent.putExtra(CardEmulation.EXTRA_CATEGORY, CardEmulation.CATEGORY_PAYMENT);
@@ -51,10 +99,130 @@ public class TagListFragment extends Fragment implements NdefTagAdapter.OnTagAct
         binding.rvTags.setAdapter(adapter);
     }
 
+    private void setupFilter() {
+        binding.spinnerFilter.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                // 下拉项依次为：全部、各文件夹、各分类标记
+                long folderId = 0, labelId = 0;
+                if (position >= 1 && position <= folders.size()) {
+                    folderId = folders.get(position - 1).getId();
+                } else if (position > folders.size()) {
+                    labelId = labels.get(position - 1 - folders.size()).getId();
+                }
+                if (folderId != filterFolderId || labelId != filterLabelId) {
+                    filterFolderId = folderId;
+                    filterLabelId = labelId;
+                    loadTags();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
     private void loadTags() {
-        List<NdefTag> tags = database.getAllNdefTags();
-        adapter.setTags(tags);
+        // 按文件夹或分类标记筛选时经关联表索引查询，不扫描整表
+        List<NdefTag> tags = filterFolderId > 0 ? database.getNdefTagsInFolder(filterFolderId)
+                : filterLabelId > 0 ? database.getNdefTagsWithLabel(filterLabelId)
+                : database.getAllNdefTags();
+        Map<Long, TagStats> stats = database.getAllTagStats();
+        adapter.setTags(tags, stats);
         binding.tvEmpty.setVisibility(tags.isEmpty() ? View.VISIBLE : View.GONE);
+        showStatsSummary(stats);
+        loadFilters();
+    }
+
+    /**
+     * 刷新筛选下拉框，文件夹显示由触发器维护的标签数
+     */
+    private void loadFilters() {
+        folders = database.getAllFolders();
+        labels = database.getAllLabels();
+        List<String> items = new ArrayList<>();
+        items.add("全部标签");
+        int selection = 0;
+        for (TagFolder folder : folders) {
+            if (folder.getId() == filterFolderId) selection = items.size();
+            items.add(folder.getName() + " (" + folder.getTagCount() + ")");
+        }
+        for (TagLabel label : labels) {
+            if (label.getId() == filterLabelId) selection = items.size();
+            items.add("#" + label.getName());
+        }
+        ArrayAdapter<String> filterAdapter = new ArrayAdapter<>(requireContext(), android.R.layout.simple_spinner_item, items);
+        filterAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        binding.spinnerFilter.setAdapter(filterAdapter);
+        binding.spinnerFilter.setSelection(selection, false);
+        binding.spinnerFilter.setVisibility(items.size() > 1 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * 汇总所有标签的读卡统计
+     */
+    private void showStatsSummary(Map<Long, TagStats> stats) {
+        int taps = 0, complete = 0, partial = 0, aborted = 0;
+        for (TagStats item : stats.values()) {
+            taps += item.getTapCount();
+            complete += item.getCompleteCount();
+            partial += item.getPartialCount();
+            aborted += item.getAbortedCount();
+        }
+        binding.tvStatsSummary.setVisibility(taps > 0 ? View.VISIBLE : View.GONE);
+        binding.tvStatsSummary.setText("共读取 " + taps + " 次 | 完整 " + complete + " | 部分 " + partial + " | 中断 " + aborted);
+    }
+
+    private void importFiles(List<Uri> uris) {
+        if (uris == null || uris.isEmpty()) return;
+        ContentResolver resolver = requireContext().getApplicationContext().getContentResolver();
+        List<NdefImportPipeline.Source> sources = new ArrayList<>();
+        for (Uri uri : uris) {
+            String name = displayName(resolver, uri);
+            sources.add(new NdefImportPipeline.Source() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+                @Override
+                public InputStream open() throws FileNotFoundException {
+                    InputStream in = resolver.openInputStream(uri);
+                    if (in == null) throw new FileNotFoundException(uri.toString());
+                    return in;
+                }
+            });
+        }
+
+        Toast.makeText(requireContext(), "开始导入 " + sources.size() + " 个文件", Toast.LENGTH_SHORT).show();
+        // 写入线程使用独立的数据库连接，避免与界面的连接互相关闭
+        new NdefImportPipeline(requireContext(), new NdefTagDatabase(requireContext()))
+                .start(sources, new NdefImportPipeline.Callback() {
+                    @Override
+                    public void onProgress(int imported, int failed) {
+                        if (binding == null) return;
+                        binding.tvStatsSummary.setVisibility(View.VISIBLE);
+                        binding.tvStatsSummary.setText("正在导入: 已导入 " + imported + " | 失败 " + failed);
+                    }
+
+                    @Override
+                    public void onFinished(int imported, int failed) {
+                        if (binding == null) return;
+                        Toast.makeText(requireContext(), "导入完成: 成功 " + imported + "，失败 " + failed,
+                                Toast.LENGTH_LONG).show();
+                        loadTags();
+                    }
+                });
+    }
+
+    private static String displayName(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+        }
+        return uri.getLastPathSegment();
     }
 
     @Override
@@ -83,6 +251,12 @@ public class TagListFragment extends Fragment implements NdefTagAdapter.OnTagAct
     @Override
     public void onDeleteTag(NdefTag tag) {
         database.deleteNdefTag(tag.getId());
+        if (tag.isEncrypted() && tag.getContentHash() != null) {
+            // 让服务立即清零该标签解密后的镜像
+            Intent intent = new Intent(requireContext(), NdefHceService.class);
+            intent.putExtra(NdefHceService.EXTRA_INVALIDATE_HASH, tag.getContentHash());
+            requireContext().startService(intent);
+        }
         loadTags();
         Toast.makeText(requireContext(), "已删除", Toast.LENGTH_SHORT).show();
     }
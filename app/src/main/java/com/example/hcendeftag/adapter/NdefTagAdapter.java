@@ -12,16 +12,20 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.devhjz.ndefemulator.R;
 import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.model.TagStats;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 public class NdefTagAdapter extends RecyclerView.Adapter<NdefTagAdapter.ViewHolder> {
 
     private List<NdefTag> tags = new ArrayList<>();
+    private Map<Long, TagStats> stats = new HashMap<>();
     private final OnTagActionListener listener;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
 
@@ -35,8 +39,9 @@ public class NdefTagAdapter extends RecyclerView.Adapter<NdefTagAdapter.ViewHold
         this.listener = listener;
     }
 
-    public void setTags(List<NdefTag> tags) {
+    public void setTags(List<NdefTag> tags, Map<Long, TagStats> stats) {
         this.tags = tags;
+        this.stats = stats;
         notifyDataSetChanged();
     }
 
@@ -55,8 +60,32 @@ public class NdefTagAdapter extends RecyclerView.Adapter<NdefTagAdapter.ViewHold
         StringBuilder details = new StringBuilder();
         details.append("记录数: ").append(tag.getRecords().size());
         details.append(" | ").append(dateFormat.format(new Date(tag.getCreatedTime())));
+        if (tag.isUnrecoverable()) {
+            details.append(" | 无法解密，内容已丢失");
+        } else if (tag.isEncrypted()) {
+            details.append(" | 已加密");
+        }
+        TagStats tagStats = stats.get(tag.getId());
+        if (tagStats != null) {
+            details.append("\n读取: ").append(tagStats.getTapCount()).append(" 次");
+            if (tagStats.getLastReadTime() > 0) {
+                details.append(" | 最近: ").append(dateFormat.format(new Date(tagStats.getLastReadTime())));
+            }
+        }
         holder.tvDetails.setText(details.toString());
 
+        // 文件夹与分类标记徽章
+        StringBuilder groups = new StringBuilder();
+        if (tag.getFolderName() != null) {
+            groups.append("[").append(tag.getFolderName()).append("]");
+        }
+        for (String label : tag.getLabels()) {
+            if (groups.length() > 0) groups.append(' ');
+            groups.append('#').append(label);
+        }
+        holder.tvGroups.setVisibility(groups.length() > 0 ? View.VISIBLE : View.GONE);
+        holder.tvGroups.setText(groups.toString());
+
         holder.rbDefault.setChecked(tag.isDefault());
         
         holder.itemView.setOnClickListener(v -> listener.onTagSelected(tag));
@@ -70,7 +99,7 @@ public class NdefTagAdapter extends RecyclerView.Adapter<NdefTagAdapter.ViewHold
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
-        TextView tvName, tvDetails;
+        TextView tvName, tvDetails, tvGroups;
         RadioButton rbDefault;
         ImageButton btnDelete;
 
@@ -78,6 +107,7 @@ public class NdefTagAdapter extends RecyclerView.Adapter<NdefTagAdapter.ViewHold
             super(itemView);
             tvName = itemView.findViewById(R.id.tv_tag_name);
             tvDetails = itemView.findViewById(R.id.tv_tag_details);
+            tvGroups = itemView.findViewById(R.id.tv_tag_groups);
             rbDefault = itemView.findViewById(R.id.rb_default);
             btnDelete = itemView.findViewById(R.id.btn_delete);
         }
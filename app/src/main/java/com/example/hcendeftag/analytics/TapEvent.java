@@ -0,0 +1,23 @@
+package com.devhjz.ndefemulator.analytics;
+
+/**
+ * 一次读卡会话的结果，由 APDU 线程产生、后台线程批量写入数据库
+ */
+public class TapEvent {
+
+    public enum Outcome {
+        COMPLETE,   // 完整读取了 NDEF 文件
+        PARTIAL,    // 读取了部分 NDEF 文件
+        ABORTED     // 未读取 NDEF 文件即断开
+    }
+
+    public final long tagId;
+    public final long time;
+    public final Outcome outcome;
+
+    public TapEvent(long tagId, long time, Outcome outcome) {
+        this.tagId = tagId;
+        this.time = time;
+        this.outcome = outcome;
+    }
+}
@@ -0,0 +1,66 @@
+package com.devhjz.ndefemulator.analytics;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.devhjz.ndefemulator.database.NdefTagDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 读卡统计的延迟批量写入：APDU 线程只做无锁入队，
+ * 后台线程定时把队列中的事件在一个事务中写入数据库
+ */
+public class TapLogger {
+    private static final String TAG = "TapLogger";
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    private final ConcurrentLinkedQueue<TapEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // 独立的数据库连接，避免与 UI / 服务主线程的连接互相关闭
+    private final NdefTagDatabase database;
+
+    public TapLogger(Context context) {
+        database = new NdefTagDatabase(context.getApplicationContext());
+    }
+
+    /**
+     * 记录一次会话结果，可在 APDU 线程中调用，不做任何 IO
+     */
+    public void log(TapEvent event) {
+        queue.offer(event);
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<TapEvent> batch = new ArrayList<>();
+        TapEvent event;
+        while ((event = queue.poll()) != null) {
+            batch.add(event);
+        }
+        if (batch.isEmpty()) return;
+        try {
+            database.insertTapEvents(batch);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error writing " + batch.size() + " tap events", e);
+        }
+    }
+
+    /**
+     * 写出剩余事件并停止后台线程
+     */
+    public void shutdown() {
+        executor.execute(this::flush);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,18 @@
+package com.devhjz.ndefemulator.compiler;
+
+/**
+ * 编译后的 NDEF 消息镜像及其元数据
+ */
+public class CompiledImage {
+    private final byte[] bytes;
+    private final String contentHash;
+
+    public CompiledImage(byte[] bytes, String contentHash) {
+        this.bytes = bytes;
+        this.contentHash = contentHash;
+    }
+
+    public byte[] getBytes() { return bytes; }
+    public String getContentHash() { return contentHash; }
+    public int getSize() { return bytes.length; }
+}
@@ -0,0 +1,22 @@
+package com.devhjz.ndefemulator.compiler;
+
+/**
+ * 标签编译失败，recordIndex 为出错记录的下标（整体错误时为 -1）
+ */
+public class NdefCompileException extends Exception {
+    private final int recordIndex;
+
+    public NdefCompileException(int recordIndex, String message) {
+        super(message);
+        this.recordIndex = recordIndex;
+    }
+
+    public NdefCompileException(int recordIndex, String message, Throwable cause) {
+        super(message, cause);
+        this.recordIndex = recordIndex;
+    }
+
+    public int getRecordIndex() {
+        return recordIndex;
+    }
+}
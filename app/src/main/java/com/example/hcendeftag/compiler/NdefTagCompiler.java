@@ -0,0 +1,137 @@
+package com.devhjz.ndefemulator.compiler;
+
+import android.net.Uri;
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 将 NdefTag 校验并编译为 NDEF 消息镜像，任一记录无效时整体失败而不是静默丢弃
+ */
+public final class NdefTagCompiler {
+
+    // NDEF 文件（2 字节 NLEN + 消息）的上限：CC 声明映射版本 2.0，READ_BINARY (B0) 的偏移只有 15 位
+    public static final int MAX_NDEF_FILE_SIZE = 0x7FFF;
+    // 消息上限需扣除 NLEN，超过 1022 字节的镜像以文件方式保存
+    public static final int MAX_NDEF_MESSAGE_SIZE = MAX_NDEF_FILE_SIZE - 2;
+
+    private static final Pattern PACKAGE_NAME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9_]*(\\.[a-zA-Z][a-zA-Z0-9_]*)+$");
+
+    private NdefTagCompiler() {
+    }
+
+    public static CompiledImage compile(NdefTag tag) throws NdefCompileException {
+        List<NdefTag.NdefRecordItem> items = tag.getRecords();
+        if (items.isEmpty()) {
+            throw new NdefCompileException(-1, "标签没有任何记录");
+        }
+
+        NdefRecord[] records = new NdefRecord[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            NdefTag.NdefRecordItem item = items.get(i);
+            validate(i, item);
+            try {
+                records[i] = item.toNdefRecord();
+            } catch (IllegalArgumentException e) {
+                throw new NdefCompileException(i, "记录 " + (i + 1) + " 无法编码: " + e.getMessage(), e);
+            }
+        }
+
+        byte[] bytes = new NdefMessage(records).toByteArray();
+        if (bytes.length > MAX_NDEF_MESSAGE_SIZE) {
+            throw new NdefCompileException(-1, "NDEF 消息过大: " + bytes.length + " 字节 (上限 " + MAX_NDEF_MESSAGE_SIZE + ")");
+        }
+        return new CompiledImage(bytes, hash(bytes));
+    }
+
+    private static void validate(int index, NdefTag.NdefRecordItem item) throws NdefCompileException {
+        String content = item.content;
+        if (content == null || content.trim().isEmpty()) {
+            throw new NdefCompileException(index, "记录 " + (index + 1) + " 内容为空");
+        }
+        switch (item.type) {
+            case URL:
+                Uri uri = Uri.parse(content);
+                if (uri.getScheme() == null) {
+                    throw new NdefCompileException(index, "记录 " + (index + 1) + " 不是有效的 URL: " + content);
+                }
+                break;
+            case APP:
+                if (!PACKAGE_NAME.matcher(content).matches()) {
+                    throw new NdefCompileException(index, "记录 " + (index + 1) + " 不是有效的包名: " + content);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 将读取到的记录还原为可编辑的记录项：只有当 TEXT/URL/APP 记录项重新编码后与原记录逐字节相同时才使用，
+     * 否则以 RAW 原样保存
+     */
+    public static NdefTag.NdefRecordItem decompile(NdefRecord record) {
+        NdefTag.NdefRecordItem item = friendlyItem(record);
+        if (item != null) {
+            try {
+                validate(0, item);
+                if (item.toNdefRecord().equals(record)) {
+                    return item;
+                }
+            } catch (NdefCompileException | IllegalArgumentException e) {
+                // 回退为 RAW
+            }
+        }
+        return NdefTag.NdefRecordItem.raw(record);
+    }
+
+    private static NdefTag.NdefRecordItem friendlyItem(NdefRecord record) {
+        short tnf = record.getTnf();
+        byte[] type = record.getType();
+        if (tnf == NdefRecord.TNF_WELL_KNOWN && Arrays.equals(type, NdefRecord.RTD_TEXT)) {
+            byte[] payload = record.getPayload();
+            if (payload.length == 0) return null;
+            int status = payload[0] & 0xff;
+            int languageLength = status & 0x3f;
+            if (1 + languageLength > payload.length) return null;
+            String text = new String(payload, 1 + languageLength, payload.length - 1 - languageLength,
+                    (status & 0x80) != 0 ? StandardCharsets.UTF_16 : StandardCharsets.UTF_8);
+            return new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.TEXT, text);
+        }
+        if ((tnf == NdefRecord.TNF_WELL_KNOWN && Arrays.equals(type, NdefRecord.RTD_URI))
+                || tnf == NdefRecord.TNF_ABSOLUTE_URI) {
+            Uri uri = record.toUri();
+            return uri == null ? null : new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.URL, uri.toString());
+        }
+        if (tnf == NdefRecord.TNF_EXTERNAL_TYPE
+                && Arrays.equals(type, "android.com:pkg".getBytes(StandardCharsets.US_ASCII))) {
+            return new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.APP,
+                    new String(record.getPayload(), StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    /**
+     * 计算编码后字节的 SHA-256，作为内容哈希
+     */
+    public static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.devhjz.ndefemulator.compiler;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.devhjz.ndefemulator.database.NdefTagDatabase;
+import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.security.TagCipher;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 保存标签的后台流水线：校验 → 编码 → 计算大小与哈希 →（加密）→ 连同编译镜像写入数据库，
+ * 结果回调到主线程
+ */
+public class TagSavePipeline {
+    private static final String TAG = "TagSavePipeline";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    public interface Callback {
+        void onSaved(NdefTag tag, CompiledImage image);
+        void onError(NdefCompileException error);
+    }
+
+    private final Context context;
+    private final NdefTagDatabase database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public TagSavePipeline(Context context, NdefTagDatabase database) {
+        this.context = context.getApplicationContext();
+        this.database = database;
+    }
+
+    /**
+     * 异步保存标签：id 为 0 时插入，否则更新
+     */
+    public void save(NdefTag tag, Callback callback) {
+        EXECUTOR.execute(() -> {
+            CompiledImage image;
+            try {
+                image = NdefTagCompiler.compile(tag);
+            } catch (NdefCompileException e) {
+                mainHandler.post(() -> callback.onError(e));
+                return;
+            }
+
+            try {
+                attachImage(context, tag, image);
+            } catch (GeneralSecurityException e) {
+                Log.e(TAG, "Error encrypting NDEF image", e);
+                mainHandler.post(() -> callback.onError(new NdefCompileException(-1, "无法加密标签内容", e)));
+                return;
+            }
+            try {
+                if (tag.getId() == 0) {
+                    long id = database.insertNdefTag(tag);
+                    if (id == -1) {
+                        mainHandler.post(() -> callback.onError(new NdefCompileException(-1, "无法保存标签")));
+                        return;
+                    }
+                    tag.setId(id);
+                } else if (database.updateNdefTag(tag) == 0) {
+                    mainHandler.post(() -> callback.onError(new NdefCompileException(-1, "标签已被删除")));
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // 记录无法加密、分类标记无效、镜像文件无法写入，或数据库写入失败（SQLException 等）
+                Log.e(TAG, "Error saving tag", e);
+                mainHandler.post(() -> callback.onError(new NdefCompileException(-1, "无法保存标签: " + e.getMessage(), e)));
+                return;
+            }
+            mainHandler.post(() -> callback.onSaved(tag, image));
+        });
+    }
+
+    /**
+     * 把编译镜像附到标签上：设置大小与内容哈希，加密标签保存密文。
+     * 明文大镜像由 NdefTagDatabase 在引用镜像之后写入私有文件，不保存 BLOB
+     */
+    public static void attachImage(Context context, NdefTag tag, CompiledImage image)
+            throws GeneralSecurityException {
+        tag.setNdefSize(image.getSize());
+        if (tag.isEncrypted()) {
+            // 加密镜像按密文寻址，不与明文镜像共享，也不写入可映射的明文文件
+            byte[] sealed = TagCipher.getInstance(context).encrypt(image.getBytes());
+            tag.setContentHash(TagCipher.ENCRYPTED_HASH_PREFIX + NdefTagCompiler.hash(sealed));
+            tag.setNdefImage(sealed);
+        } else {
+            tag.setContentHash(image.getContentHash());
+            tag.setNdefImage(image.getBytes());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.devhjz.ndefemulator.database;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 大体积 NDEF 镜像的私有文件存储，文件内容为完整的 NDEF 文件（NLEN + 消息），按内容哈希命名
+ */
+public final class NdefImageFiles {
+
+    // 超过原 1024 字节 NDEF 文件上限的镜像改为文件存储
+    public static final int LARGE_PAYLOAD_THRESHOLD = 0x0400 - 2;
+
+    private static final String DIR_NAME = "ndef_images";
+
+    private NdefImageFiles() {
+    }
+
+    public static boolean isLarge(int ndefSize) {
+        return ndefSize > LARGE_PAYLOAD_THRESHOLD;
+    }
+
+    public static File fileFor(Context context, String contentHash) {
+        return new File(new File(context.getFilesDir(), DIR_NAME), contentHash + ".ndef");
+    }
+
+    /**
+     * 写入镜像文件，先写临时文件再重命名，读取方不会看到写了一半的文件。
+     * 可能有多个线程同时写入同一哈希（如导入重复条目），每个写入方使用独立的临时文件，
+     * 目标文件已存在且长度正确即视为成功
+     */
+    public static File write(Context context, String contentHash, byte[] message) throws IOException {
+        File file = fileFor(context, contentHash);
+        if (isComplete(file, message)) {
+            return file;
+        }
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File tmp = File.createTempFile(contentHash, ".tmp", dir);
+        boolean renamed = false;
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                int nlen = message.length;
+                out.write((nlen >> 8) & 0xff);
+                out.write(nlen & 0xff);
+                out.write(message);
+                out.getFD().sync();
+            }
+            renamed = tmp.renameTo(file);
+            if (!renamed && !isComplete(file, message)) {
+                throw new IOException("Cannot rename " + tmp);
+            }
+        } finally {
+            if (!renamed) {
+                tmp.delete();
+            }
+        }
+        return file;
+    }
+
+    // 文件按内容哈希命名，长度正确即内容正确
+    private static boolean isComplete(File file, byte[] message) {
+        return file.exists() && file.length() == message.length + 2;
+    }
+
+    public static void delete(Context context, String contentHash) {
+        fileFor(context, contentHash).delete();
+    }
+}
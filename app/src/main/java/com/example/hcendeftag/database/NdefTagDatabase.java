@@ -5,16 +5,27 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.devhjz.ndefemulator.analytics.TapEvent;
 import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.model.TagFolder;
+import com.devhjz.ndefemulator.model.TagLabel;
+import com.devhjz.ndefemulator.model.TagStats;
+import com.devhjz.ndefemulator.security.TagCipher;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * NDEF 标签数据库管理类，采用 JSON 序列化存储多条记录
@@ -22,7 +33,7 @@ import java.util.List;
 public class NdefTagDatabase extends SQLiteOpenHelper {
     private static final String TAG = "NdefTagDatabase";
     private static final String DATABASE_NAME = "ndef_tags_v2.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 6;
 
     // 表名和列名
     private static final String TABLE_NAME = "ndef_tags";
@@ -32,6 +43,28 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_CREATED_TIME = "created_time";
     private static final String COLUMN_LAST_MODIFIED_TIME = "last_modified_time";
     private static final String COLUMN_IS_DEFAULT = "is_default";
+    private static final String COLUMN_NDEF_IMAGE = "ndef_image";     // 版本 2-3 的内联镜像，版本 4 起移入 ndef_images
+    private static final String COLUMN_CONTENT_HASH = "content_hash"; // 编译镜像的 SHA-256，引用 ndef_images
+    private static final String COLUMN_NDEF_SIZE = "ndef_size";       // 编译镜像字节数
+    private static final String COLUMN_ENCRYPTED = "encrypted";       // 为 1 时 records_json 与镜像均为密文
+
+    // 按内容寻址的编译镜像表，相同内容的标签共享一行，ref_count 为引用它的标签数
+    private static final String TABLE_IMAGES = "ndef_images";
+    private static final String COLUMN_IMAGE = "image";               // 大镜像保存在文件中，此列为 NULL
+    private static final String COLUMN_REF_COUNT = "ref_count";
+
+    private static final String CREATE_IMAGES_SQL = "CREATE TABLE " + TABLE_IMAGES + " (" +
+            COLUMN_CONTENT_HASH + " TEXT PRIMARY KEY, " +
+            COLUMN_IMAGE + " BLOB, " +
+            COLUMN_NDEF_SIZE + " INTEGER, " +
+            COLUMN_REF_COUNT + " INTEGER DEFAULT 0" +
+            ")";
+
+    // 列表查询不读取镜像 BLOB
+    private static final String[] LIST_COLUMNS = {
+            COLUMN_ID, COLUMN_NAME, COLUMN_RECORDS_JSON, COLUMN_CREATED_TIME,
+            COLUMN_LAST_MODIFIED_TIME, COLUMN_IS_DEFAULT, COLUMN_CONTENT_HASH, COLUMN_NDEF_SIZE, COLUMN_ENCRYPTED
+    };
 
     // SQL 创建表语句
     private static final String CREATE_TABLE_SQL = "CREATE TABLE " + TABLE_NAME + " (" +
@@ -40,23 +73,172 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
             COLUMN_RECORDS_JSON + " TEXT, " +
             COLUMN_CREATED_TIME + " LONG, " +
             COLUMN_LAST_MODIFIED_TIME + " LONG, " +
-            COLUMN_IS_DEFAULT + " INTEGER DEFAULT 0" +
+            COLUMN_IS_DEFAULT + " INTEGER DEFAULT 0, " +
+            COLUMN_CONTENT_HASH + " TEXT, " +
+            COLUMN_NDEF_SIZE + " INTEGER, " +
+            COLUMN_ENCRYPTED + " INTEGER DEFAULT 0" +
             ")";
 
+    // 读卡事件表，只保留最近 MAX_TAP_EVENTS 条
+    private static final String TABLE_TAP_EVENTS = "tap_events";
+    private static final String COLUMN_TAG_ID = "tag_id";
+    private static final String COLUMN_TIME = "time";
+    private static final String COLUMN_OUTCOME = "outcome";
+    private static final int MAX_TAP_EVENTS = 1000;
+
+    // 按标签聚合的读卡统计表
+    private static final String TABLE_TAG_STATS = "tag_stats";
+    private static final String COLUMN_TAP_COUNT = "tap_count";
+    private static final String COLUMN_COMPLETE_COUNT = "complete_count";
+    private static final String COLUMN_PARTIAL_COUNT = "partial_count";
+    private static final String COLUMN_ABORTED_COUNT = "aborted_count";
+    private static final String COLUMN_LAST_READ_TIME = "last_read_time";
+
+    private static final String CREATE_TAP_EVENTS_SQL = "CREATE TABLE " + TABLE_TAP_EVENTS + " (" +
+            COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_TAG_ID + " INTEGER, " +
+            COLUMN_TIME + " LONG, " +
+            COLUMN_OUTCOME + " TEXT" +
+            ")";
+
+    private static final String CREATE_TAG_STATS_SQL = "CREATE TABLE " + TABLE_TAG_STATS + " (" +
+            COLUMN_TAG_ID + " INTEGER PRIMARY KEY, " +
+            COLUMN_TAP_COUNT + " INTEGER DEFAULT 0, " +
+            COLUMN_COMPLETE_COUNT + " INTEGER DEFAULT 0, " +
+            COLUMN_PARTIAL_COUNT + " INTEGER DEFAULT 0, " +
+            COLUMN_ABORTED_COUNT + " INTEGER DEFAULT 0, " +
+            COLUMN_LAST_READ_TIME + " LONG DEFAULT 0" +
+            ")";
+
+    // 文件夹表，tag_count 由 tag_folders 上的触发器维护
+    private static final String TABLE_FOLDERS = "folders";
+    private static final String COLUMN_TAG_COUNT = "tag_count";
+    // 分类标记表
+    private static final String TABLE_LABELS = "labels";
+    // 关联表：每个标签至多一个文件夹，可有多个分类标记
+    private static final String TABLE_TAG_FOLDERS = "tag_folders";
+    private static final String TABLE_TAG_LABELS = "tag_labels";
+    private static final String COLUMN_FOLDER_ID = "folder_id";
+    private static final String COLUMN_LABEL_ID = "label_id";
+    // 列表查询中附带的分组列
+    private static final String COLUMN_FOLDER_NAME = "folder_name";
+    private static final String COLUMN_LABEL_NAMES = "label_names";
+    public static final String LABEL_SEPARATOR = ",";
+
+    private static final String[] CREATE_GROUPS_SQL = {
+            "CREATE TABLE " + TABLE_FOLDERS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_NAME + " TEXT NOT NULL UNIQUE, " +
+                    COLUMN_TAG_COUNT + " INTEGER DEFAULT 0" +
+                    ")",
+            "CREATE TABLE " + TABLE_LABELS + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_NAME + " TEXT NOT NULL UNIQUE" +
+                    ")",
+            "CREATE TABLE " + TABLE_TAG_FOLDERS + " (" +
+                    COLUMN_TAG_ID + " INTEGER PRIMARY KEY, " +
+                    COLUMN_FOLDER_ID + " INTEGER NOT NULL" +
+                    ")",
+            "CREATE INDEX idx_tag_folders_folder ON " + TABLE_TAG_FOLDERS + " (" + COLUMN_FOLDER_ID + ", " + COLUMN_TAG_ID + ")",
+            "CREATE TABLE " + TABLE_TAG_LABELS + " (" +
+                    COLUMN_TAG_ID + " INTEGER NOT NULL, " +
+                    COLUMN_LABEL_ID + " INTEGER NOT NULL, " +
+                    "PRIMARY KEY (" + COLUMN_TAG_ID + ", " + COLUMN_LABEL_ID + ")" +
+                    ")",
+            "CREATE INDEX idx_tag_labels_label ON " + TABLE_TAG_LABELS + " (" + COLUMN_LABEL_ID + ", " + COLUMN_TAG_ID + ")",
+            // 文件夹计数随关联行增删改同步更新
+            "CREATE TRIGGER trg_tag_folders_insert AFTER INSERT ON " + TABLE_TAG_FOLDERS + " BEGIN " +
+                    "UPDATE " + TABLE_FOLDERS + " SET " + COLUMN_TAG_COUNT + " = " + COLUMN_TAG_COUNT + " + 1" +
+                    " WHERE " + COLUMN_ID + " = NEW." + COLUMN_FOLDER_ID + "; END",
+            "CREATE TRIGGER trg_tag_folders_delete AFTER DELETE ON " + TABLE_TAG_FOLDERS + " BEGIN " +
+                    "UPDATE " + TABLE_FOLDERS + " SET " + COLUMN_TAG_COUNT + " = " + COLUMN_TAG_COUNT + " - 1" +
+                    " WHERE " + COLUMN_ID + " = OLD." + COLUMN_FOLDER_ID + "; END",
+            "CREATE TRIGGER trg_tag_folders_update AFTER UPDATE OF " + COLUMN_FOLDER_ID + " ON " + TABLE_TAG_FOLDERS + " BEGIN " +
+                    "UPDATE " + TABLE_FOLDERS + " SET " + COLUMN_TAG_COUNT + " = " + COLUMN_TAG_COUNT + " - 1" +
+                    " WHERE " + COLUMN_ID + " = OLD." + COLUMN_FOLDER_ID + "; " +
+                    "UPDATE " + TABLE_FOLDERS + " SET " + COLUMN_TAG_COUNT + " = " + COLUMN_TAG_COUNT + " + 1" +
+                    " WHERE " + COLUMN_ID + " = NEW." + COLUMN_FOLDER_ID + "; END",
+            // 删除标签、文件夹或分类标记时级联删除关联行
+            "CREATE TRIGGER trg_ndef_tags_delete AFTER DELETE ON " + TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + TABLE_TAG_FOLDERS + " WHERE " + COLUMN_TAG_ID + " = OLD." + COLUMN_ID + "; " +
+                    "DELETE FROM " + TABLE_TAG_LABELS + " WHERE " + COLUMN_TAG_ID + " = OLD." + COLUMN_ID + "; END",
+            "CREATE TRIGGER trg_folders_delete AFTER DELETE ON " + TABLE_FOLDERS + " BEGIN " +
+                    "DELETE FROM " + TABLE_TAG_FOLDERS + " WHERE " + COLUMN_FOLDER_ID + " = OLD." + COLUMN_ID + "; END",
+            "CREATE TRIGGER trg_labels_delete AFTER DELETE ON " + TABLE_LABELS + " BEGIN " +
+                    "DELETE FROM " + TABLE_TAG_LABELS + " WHERE " + COLUMN_LABEL_ID + " = OLD." + COLUMN_ID + "; END",
+            // 部分索引只包含默认标签那一行，切换默认标签不再扫描整表
+            "CREATE INDEX idx_ndef_tags_default ON " + TABLE_NAME + " (" + COLUMN_IS_DEFAULT + ") WHERE " + COLUMN_IS_DEFAULT + " = 1",
+            "CREATE INDEX idx_ndef_tags_created ON " + TABLE_NAME + " (" + COLUMN_CREATED_TIME + ")",
+    };
+
+    // 文件夹名与以 LABEL_SEPARATOR 连接的分类标记名，标签表别名为 t
+    private static final String GROUP_COLUMNS = ", f." + COLUMN_NAME + " AS " + COLUMN_FOLDER_NAME +
+            ", (SELECT group_concat(l." + COLUMN_NAME + ", '" + LABEL_SEPARATOR + "') FROM " + TABLE_TAG_LABELS + " tl" +
+            " JOIN " + TABLE_LABELS + " l ON l." + COLUMN_ID + " = tl." + COLUMN_LABEL_ID +
+            " WHERE tl." + COLUMN_TAG_ID + " = t." + COLUMN_ID + ") AS " + COLUMN_LABEL_NAMES;
+    private static final String GROUP_JOINS =
+            " LEFT JOIN " + TABLE_TAG_FOLDERS + " tf ON tf." + COLUMN_TAG_ID + " = t." + COLUMN_ID +
+            " LEFT JOIN " + TABLE_FOLDERS + " f ON f." + COLUMN_ID + " = tf." + COLUMN_FOLDER_ID;
+
+    // 列表查询：附带文件夹与分类标记，不读取镜像 BLOB
+    private static final String TAG_LIST_SQL = "SELECT t." + TextUtils.join(", t.", LIST_COLUMNS) + GROUP_COLUMNS +
+            " FROM " + TABLE_NAME + " t" + GROUP_JOINS;
+
+    // 连同共享镜像、文件夹与分类标记一起查询单个标签
+    private static final String TAG_WITH_IMAGE_SQL = "SELECT t." + TextUtils.join(", t.", LIST_COLUMNS) +
+            ", i." + COLUMN_IMAGE + " AS " + COLUMN_NDEF_IMAGE + GROUP_COLUMNS +
+            " FROM " + TABLE_NAME + " t LEFT JOIN " + TABLE_IMAGES + " i" +
+            " ON t." + COLUMN_CONTENT_HASH + " = i." + COLUMN_CONTENT_HASH + GROUP_JOINS;
+    private static final String TAG_LIST_ORDER = " ORDER BY t." + COLUMN_CREATED_TIME + " DESC";
+
+    private final Context context;
+
     public NdefTagDatabase(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context.getApplicationContext();
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_TABLE_SQL);
+        db.execSQL(CREATE_TAP_EVENTS_SQL);
+        db.execSQL(CREATE_TAG_STATS_SQL);
+        db.execSQL(CREATE_IMAGES_SQL);
+        for (String sql : CREATE_GROUPS_SQL) {
+            db.execSQL(sql);
+        }
         Log.d(TAG, "数据库表创建成功");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
-        onCreate(db);
+        // 逐版本迁移，保留已有标签
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NDEF_IMAGE + " BLOB");
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_CONTENT_HASH + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_NDEF_SIZE + " INTEGER");
+        }
+        if (oldVersion < 3) {
+            db.execSQL(CREATE_TAP_EVENTS_SQL);
+            db.execSQL(CREATE_TAG_STATS_SQL);
+        }
+        if (oldVersion < 4) {
+            // 内联镜像按哈希合并进 ndef_images，旧列置空（低版本 SQLite 不支持 DROP COLUMN）
+            db.execSQL(CREATE_IMAGES_SQL);
+            db.execSQL("INSERT INTO " + TABLE_IMAGES + " (" + COLUMN_CONTENT_HASH + ", " + COLUMN_IMAGE + ", " +
+                    COLUMN_NDEF_SIZE + ", " + COLUMN_REF_COUNT + ") SELECT " + COLUMN_CONTENT_HASH + ", MAX(" +
+                    COLUMN_NDEF_IMAGE + "), MAX(" + COLUMN_NDEF_SIZE + "), COUNT(*) FROM " + TABLE_NAME +
+                    " WHERE " + COLUMN_CONTENT_HASH + " IS NOT NULL GROUP BY " + COLUMN_CONTENT_HASH);
+            db.execSQL("UPDATE " + TABLE_NAME + " SET " + COLUMN_NDEF_IMAGE + " = NULL");
+        }
+        if (oldVersion < 5) {
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_ENCRYPTED + " INTEGER DEFAULT 0");
+        }
+        if (oldVersion < 6) {
+            for (String sql : CREATE_GROUPS_SQL) {
+                db.execSQL(sql);
+            }
+        }
     }
 
     /**
@@ -98,34 +280,290 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
     }
 
     /**
-     * 插入新的 NDEF 标签
+     * 记录列的存储值：加密标签保存 Base64(IV + 密文)
+     */
+    private String recordsValue(NdefTag tag) {
+        String json = serializeRecords(tag.getRecords());
+        if (!tag.isEncrypted()) return json;
+        try {
+            return TagCipher.getInstance(context).encryptString(json);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("无法加密标签内容", e);
+        }
+    }
+
+    /**
+     * 读取记录列，加密标签无法解密时（如从备份恢复到其他设备、数据密钥已重建）返回空列表并标记为不可恢复
+     */
+    private List<NdefTag.NdefRecordItem> readRecords(NdefTag tag, String value) {
+        if (!tag.isEncrypted() || value == null) return deserializeRecords(value);
+        try {
+            return deserializeRecords(TagCipher.getInstance(context).decryptString(value));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Error decrypting records", e);
+            tag.setUnrecoverable(true);
+            return new ArrayList<>();
+        }
+    }
+
+    private void putCompiledImage(ContentValues values, NdefTag tag) {
+        values.put(COLUMN_CONTENT_HASH, tag.getContentHash());
+        if (tag.getNdefSize() > 0) {
+            values.put(COLUMN_NDEF_SIZE, tag.getNdefSize());
+        } else {
+            values.putNull(COLUMN_NDEF_SIZE);
+        }
+    }
+
+    /**
+     * 从游标当前行读取标签，未查询镜像列时不加载镜像
+     */
+    private NdefTag cursorToTag(Cursor cursor) {
+        NdefTag tag = new NdefTag();
+        tag.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
+        tag.setName(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)));
+        tag.setEncrypted(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ENCRYPTED)) == 1);
+        tag.setRecords(readRecords(tag, cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_RECORDS_JSON))));
+        tag.setCreatedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_TIME)));
+        tag.setLastModifiedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED_TIME)));
+        tag.setDefault(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_IS_DEFAULT)) == 1);
+        tag.setContentHash(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_CONTENT_HASH)));
+        tag.setNdefSize(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_NDEF_SIZE)));
+        int imageIndex = cursor.getColumnIndex(COLUMN_NDEF_IMAGE);
+        if (imageIndex >= 0 && !cursor.isNull(imageIndex)) {
+            tag.setNdefImage(cursor.getBlob(imageIndex));
+        }
+        int folderIndex = cursor.getColumnIndex(COLUMN_FOLDER_NAME);
+        if (folderIndex >= 0) {
+            tag.setFolderName(cursor.getString(folderIndex));
+        }
+        int labelsIndex = cursor.getColumnIndex(COLUMN_LABEL_NAMES);
+        if (labelsIndex >= 0 && !cursor.isNull(labelsIndex)) {
+            tag.setLabels(new ArrayList<>(Arrays.asList(cursor.getString(labelsIndex).split(LABEL_SEPARATOR))));
+        }
+        return tag;
+    }
+
+    /**
+     * 引用共享镜像：不存在时插入，随后引用计数加一。
+     * 明文大镜像的 image 为 null，内容在引用计数加一之后写入 NdefImageFiles，与 releaseImage 删除文件同在写事务内，
+     * 不会被并发的释放删掉；本次新建的镜像文件记入 createdFiles，事务回滚时由调用方删除。
+     * 加密镜像无论大小都以密文保存在 image 中
+     */
+    private void acquireImage(SQLiteDatabase db, NdefTag tag, List<String> createdFiles) {
+        String hash = tag.getContentHash();
+        if (hash == null) return;
+        boolean fileBacked = !tag.isEncrypted() && NdefImageFiles.isLarge(tag.getNdefSize());
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CONTENT_HASH, hash);
+        values.put(COLUMN_IMAGE, fileBacked ? null : tag.getNdefImage());
+        values.put(COLUMN_NDEF_SIZE, tag.getNdefSize());
+        values.put(COLUMN_REF_COUNT, 0);
+        long row = db.insertWithOnConflict(TABLE_IMAGES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        db.execSQL("UPDATE " + TABLE_IMAGES + " SET " + COLUMN_REF_COUNT + " = " + COLUMN_REF_COUNT + " + 1" +
+                " WHERE " + COLUMN_CONTENT_HASH + " = ?", new Object[]{hash});
+        if (fileBacked && tag.getNdefImage() != null) {
+            try {
+                NdefImageFiles.write(context, hash, tag.getNdefImage());
+            } catch (IOException e) {
+                throw new IllegalStateException("无法保存 NDEF 镜像文件", e);
+            }
+            if (row != -1) {
+                createdFiles.add(hash);
+            }
+        }
+    }
+
+    /**
+     * 释放共享镜像的一个引用，计数归零时删除该行；文件存储的明文大镜像（image 为 NULL）同时在写事务内删除文件。
+     * 应作为事务中的最后一步，避免之后回滚留下没有文件的镜像行
+     */
+    private void releaseImage(SQLiteDatabase db, String hash) {
+        if (hash == null) return;
+        db.execSQL("UPDATE " + TABLE_IMAGES + " SET " + COLUMN_REF_COUNT + " = " + COLUMN_REF_COUNT + " - 1" +
+                " WHERE " + COLUMN_CONTENT_HASH + " = ?", new Object[]{hash});
+        Cursor cursor = db.query(TABLE_IMAGES, new String[]{COLUMN_IMAGE + " IS NULL"},
+                COLUMN_CONTENT_HASH + " = ? AND " + COLUMN_REF_COUNT + " <= 0", new String[]{hash}, null, null, null);
+        boolean released = cursor.moveToFirst();
+        boolean fileBacked = released && cursor.getInt(0) == 1;
+        cursor.close();
+        if (released) {
+            db.delete(TABLE_IMAGES, COLUMN_CONTENT_HASH + " = ?", new String[]{hash});
+        }
+        if (fileBacked) {
+            NdefImageFiles.delete(context, hash);
+        }
+    }
+
+    /**
+     * 事务失败时删除本次新建的镜像文件，须在 endTransaction 之前调用，其他写入方此时还不能引用这些镜像
+     */
+    private void deleteCreatedFiles(List<String> createdFiles) {
+        for (String hash : createdFiles) {
+            NdefImageFiles.delete(context, hash);
+        }
+    }
+
+    /**
+     * 按名称查找文件夹或分类标记，不存在时创建，返回其 ID
+     */
+    private long findOrInsertGroup(SQLiteDatabase db, String table, String name) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, name);
+        long id = db.insertWithOnConflict(table, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        if (id != -1) return id;
+        Cursor cursor = db.query(table, new String[]{COLUMN_ID}, COLUMN_NAME + " = ?",
+                new String[]{name}, null, null, null);
+        id = cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        cursor.close();
+        return id;
+    }
+
+    /**
+     * 重写标签的文件夹与分类标记关联，文件夹计数由触发器更新
+     */
+    private void writeGroups(SQLiteDatabase db, long tagId, NdefTag tag) {
+        String[] args = new String[]{String.valueOf(tagId)};
+        db.delete(TABLE_TAG_FOLDERS, COLUMN_TAG_ID + " = ?", args);
+        db.delete(TABLE_TAG_LABELS, COLUMN_TAG_ID + " = ?", args);
+        ContentValues values = new ContentValues();
+        if (!TextUtils.isEmpty(tag.getFolderName())) {
+            values.put(COLUMN_TAG_ID, tagId);
+            values.put(COLUMN_FOLDER_ID, findOrInsertGroup(db, TABLE_FOLDERS, tag.getFolderName()));
+            db.insert(TABLE_TAG_FOLDERS, null, values);
+        }
+        for (String label : tag.getLabels()) {
+            if (TextUtils.isEmpty(label)) continue;
+            values.clear();
+            values.put(COLUMN_TAG_ID, tagId);
+            values.put(COLUMN_LABEL_ID, findOrInsertGroup(db, TABLE_LABELS, label));
+            db.insertWithOnConflict(TABLE_TAG_LABELS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    private String queryContentHash(SQLiteDatabase db, long id) {
+        Cursor cursor = db.query(TABLE_NAME, new String[]{COLUMN_CONTENT_HASH}, COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)}, null, null, null);
+        String hash = cursor.moveToFirst() ? cursor.getString(0) : null;
+        cursor.close();
+        return hash;
+    }
+
+    /**
+     * 分类标记以 LABEL_SEPARATOR 连接后读取，名称中不能包含分隔符
+     */
+    private static void checkLabels(NdefTag tag) {
+        for (String label : tag.getLabels()) {
+            if (label != null && label.contains(LABEL_SEPARATOR)) {
+                throw new IllegalArgumentException("分类标记不能包含 \"" + LABEL_SEPARATOR + "\": " + label);
+            }
+        }
+    }
+
+    /**
+     * 插入新的 NDEF 标签，分类标记包含 LABEL_SEPARATOR 时抛出 IllegalArgumentException
      */
     public long insertNdefTag(NdefTag tag) {
+        checkLabels(tag);
+        SQLiteDatabase db = this.getWritableDatabase();
+        long id;
+        List<String> createdFiles = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            id = insertTag(db, tag, createdFiles);
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            deleteCreatedFiles(createdFiles);
+            throw e;
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+        return id;
+    }
+
+    /**
+     * 在一个事务中批量插入标签，用于导入；插入成功的标签会设置 ID，返回插入数
+     */
+    public int insertNdefTags(List<NdefTag> tags) {
+        for (NdefTag tag : tags) {
+            checkLabels(tag);
+        }
         SQLiteDatabase db = this.getWritableDatabase();
+        int inserted = 0;
+        List<String> createdFiles = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (NdefTag tag : tags) {
+                long id = insertTag(db, tag, createdFiles);
+                if (id != -1) {
+                    tag.setId(id);
+                    inserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            deleteCreatedFiles(createdFiles);
+            throw e;
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+        return inserted;
+    }
+
+    private long insertTag(SQLiteDatabase db, NdefTag tag, List<String> createdFiles) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_NAME, tag.getName());
-        values.put(COLUMN_RECORDS_JSON, serializeRecords(tag.getRecords()));
+        values.put(COLUMN_RECORDS_JSON, recordsValue(tag));
+        values.put(COLUMN_ENCRYPTED, tag.isEncrypted() ? 1 : 0);
         values.put(COLUMN_CREATED_TIME, tag.getCreatedTime());
         values.put(COLUMN_LAST_MODIFIED_TIME, tag.getLastModifiedTime());
         values.put(COLUMN_IS_DEFAULT, tag.isDefault() ? 1 : 0);
+        putCompiledImage(values, tag);
 
         long id = db.insert(TABLE_NAME, null, values);
-        db.close();
+        if (id != -1) {
+            acquireImage(db, tag, createdFiles);
+            writeGroups(db, id, tag);
+        }
         return id;
     }
 
     /**
-     * 更新 NDEF 标签
+     * 更新 NDEF 标签，文件夹与分类标记按 tag 中的字段整体重写
      */
     public int updateNdefTag(NdefTag tag) {
+        checkLabels(tag);
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_NAME, tag.getName());
-        values.put(COLUMN_RECORDS_JSON, serializeRecords(tag.getRecords()));
+        values.put(COLUMN_RECORDS_JSON, recordsValue(tag));
+        values.put(COLUMN_ENCRYPTED, tag.isEncrypted() ? 1 : 0);
         values.put(COLUMN_LAST_MODIFIED_TIME, System.currentTimeMillis());
         values.put(COLUMN_IS_DEFAULT, tag.isDefault() ? 1 : 0);
+        putCompiledImage(values, tag);
 
-        int rows = db.update(TABLE_NAME, values, COLUMN_ID + " = ?", new String[]{String.valueOf(tag.getId())});
+        int rows;
+        List<String> createdFiles = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            String oldHash = queryContentHash(db, tag.getId());
+            rows = db.update(TABLE_NAME, values, COLUMN_ID + " = ?", new String[]{String.valueOf(tag.getId())});
+            if (rows > 0) {
+                writeGroups(db, tag.getId(), tag);
+                if (!TextUtils.equals(oldHash, tag.getContentHash())) {
+                    acquireImage(db, tag, createdFiles);
+                    releaseImage(db, oldHash);
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (RuntimeException e) {
+            deleteCreatedFiles(createdFiles);
+            throw e;
+        } finally {
+            db.endTransaction();
+        }
         db.close();
         return rows;
     }
@@ -135,29 +573,56 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
      */
     public int deleteNdefTag(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        int rows = db.delete(TABLE_NAME, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        String[] args = new String[]{String.valueOf(id)};
+        int rows;
+        db.beginTransaction();
+        try {
+            String hash = queryContentHash(db, id);
+            // 文件夹与分类标记的关联由触发器级联删除
+            rows = db.delete(TABLE_NAME, COLUMN_ID + " = ?", args);
+            db.delete(TABLE_TAG_STATS, COLUMN_TAG_ID + " = ?", args);
+            db.delete(TABLE_TAP_EVENTS, COLUMN_TAG_ID + " = ?", args);
+            if (rows > 0) {
+                releaseImage(db, hash);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
         db.close();
         return rows;
     }
 
     /**
-     * 获取所有 NDEF 标签
+     * 获取所有 NDEF 标签（含文件夹与分类标记）
      */
     public List<NdefTag> getAllNdefTags() {
+        return queryTagList("", null);
+    }
+
+    /**
+     * 获取文件夹中的标签，经 tag_folders 索引查询
+     */
+    public List<NdefTag> getNdefTagsInFolder(long folderId) {
+        return queryTagList(" WHERE tf." + COLUMN_FOLDER_ID + " = ?", new String[]{String.valueOf(folderId)});
+    }
+
+    /**
+     * 获取带有指定分类标记的标签，经 tag_labels 索引查询
+     */
+    public List<NdefTag> getNdefTagsWithLabel(long labelId) {
+        return queryTagList(" WHERE t." + COLUMN_ID + " IN (SELECT " + COLUMN_TAG_ID + " FROM " + TABLE_TAG_LABELS +
+                " WHERE " + COLUMN_LABEL_ID + " = ?)", new String[]{String.valueOf(labelId)});
+    }
+
+    private List<NdefTag> queryTagList(String where, String[] args) {
         List<NdefTag> tags = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_NAME, null, null, null, null, null, COLUMN_CREATED_TIME + " DESC");
+        Cursor cursor = db.rawQuery(TAG_LIST_SQL + where + TAG_LIST_ORDER, args);
 
         if (cursor.moveToFirst()) {
             do {
-                NdefTag tag = new NdefTag();
-                tag.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
-                tag.setName(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)));
-                tag.setRecords(deserializeRecords(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_RECORDS_JSON))));
-                tag.setCreatedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_TIME)));
-                tag.setLastModifiedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED_TIME)));
-                tag.setDefault(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_IS_DEFAULT)) == 1);
-                tags.add(tag);
+                tags.add(cursorToTag(cursor));
             } while (cursor.moveToNext());
         }
 
@@ -167,21 +632,42 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
     }
 
     /**
-     * 根据 ID 获取 NDEF 标签
+     * 根据 ID 获取 NDEF 标签（含共享镜像）
      */
     public NdefTag getNdefTagById(long id) {
+        return getNdefTagById(id, true);
+    }
+
+    /**
+     * 根据 ID 获取 NDEF 标签，withImage 为 false 时只读取镜像哈希，镜像可通过 getNdefImage 按需读取
+     */
+    public NdefTag getNdefTagById(long id, boolean withImage) {
+        return querySingleTag(COLUMN_ID + " = ?", new String[]{String.valueOf(id)}, withImage);
+    }
+
+    /**
+     * 获取默认的 NDEF 标签（含共享镜像）
+     */
+    public NdefTag getDefaultNdefTag() {
+        return getDefaultNdefTag(true);
+    }
+
+    public NdefTag getDefaultNdefTag(boolean withImage) {
+        // 条件须为字面量，SQLite 才会使用 is_default 的部分索引
+        return querySingleTag(COLUMN_IS_DEFAULT + " = 1", null, withImage);
+    }
+
+    /**
+     * 查询单个标签，同时读取文件夹与分类标记，读取后再 updateNdefTag 不会丢失分组
+     */
+    private NdefTag querySingleTag(String selection, String[] args, boolean withImage) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_NAME, null, COLUMN_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
+        Cursor cursor = db.rawQuery((withImage ? TAG_WITH_IMAGE_SQL : TAG_LIST_SQL) +
+                " WHERE t." + selection + " LIMIT 1", args);
 
         NdefTag tag = null;
         if (cursor.moveToFirst()) {
-            tag = new NdefTag();
-            tag.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
-            tag.setName(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)));
-            tag.setRecords(deserializeRecords(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_RECORDS_JSON))));
-            tag.setCreatedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_TIME)));
-            tag.setLastModifiedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED_TIME)));
-            tag.setDefault(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_IS_DEFAULT)) == 1);
+            tag = cursorToTag(cursor);
         }
 
         cursor.close();
@@ -190,26 +676,21 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
     }
 
     /**
-     * 获取默认的 NDEF 标签
+     * 按内容哈希读取共享镜像，明文大镜像或不存在时返回 null，加密镜像返回密文
      */
-    public NdefTag getDefaultNdefTag() {
+    public byte[] getNdefImage(String contentHash) {
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_NAME, null, COLUMN_IS_DEFAULT + " = ?", new String[]{"1"}, null, null, null);
+        Cursor cursor = db.query(TABLE_IMAGES, new String[]{COLUMN_IMAGE}, COLUMN_CONTENT_HASH + " = ?",
+                new String[]{contentHash}, null, null, null);
 
-        NdefTag tag = null;
-        if (cursor.moveToFirst()) {
-            tag = new NdefTag();
-            tag.setId(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)));
-            tag.setName(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_NAME)));
-            tag.setRecords(deserializeRecords(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_RECORDS_JSON))));
-            tag.setCreatedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_TIME)));
-            tag.setLastModifiedTime(cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED_TIME)));
-            tag.setDefault(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_IS_DEFAULT)) == 1);
+        byte[] image = null;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            image = cursor.getBlob(0);
         }
 
         cursor.close();
         db.close();
-        return tag;
+        return image;
     }
 
     /**
@@ -217,16 +698,130 @@ public class NdefTagDatabase extends SQLiteOpenHelper {
      */
     public void setDefaultNdefTag(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        
-        // 首先清除所有默认标记
-        ContentValues clearValues = new ContentValues();
-        clearValues.put(COLUMN_IS_DEFAULT, 0);
-        db.update(TABLE_NAME, clearValues, null, null);
+        db.beginTransaction();
+        try {
+            // 只清除当前默认标签（经部分索引定位），不改写其他行
+            ContentValues clearValues = new ContentValues();
+            clearValues.put(COLUMN_IS_DEFAULT, 0);
+            db.update(TABLE_NAME, clearValues, COLUMN_IS_DEFAULT + " = 1", null);
 
-        // 设置指定 ID 的标签为默认
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_IS_DEFAULT, 1);
-        db.update(TABLE_NAME, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+            // 设置指定 ID 的标签为默认
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_IS_DEFAULT, 1);
+            db.update(TABLE_NAME, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    /**
+     * 获取所有文件夹及其标签数
+     */
+    public List<TagFolder> getAllFolders() {
+        List<TagFolder> folders = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_FOLDERS, new String[]{COLUMN_ID, COLUMN_NAME, COLUMN_TAG_COUNT},
+                null, null, null, null, COLUMN_NAME);
+
+        if (cursor.moveToFirst()) {
+            do {
+                folders.add(new TagFolder(cursor.getLong(0), cursor.getString(1), cursor.getInt(2)));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+        db.close();
+        return folders;
+    }
+
+    /**
+     * 获取所有分类标记
+     */
+    public List<TagLabel> getAllLabels() {
+        List<TagLabel> labels = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_LABELS, new String[]{COLUMN_ID, COLUMN_NAME},
+                null, null, null, null, COLUMN_NAME);
+
+        if (cursor.moveToFirst()) {
+            do {
+                labels.add(new TagLabel(cursor.getLong(0), cursor.getString(1)));
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+        db.close();
+        return labels;
+    }
+
+    /**
+     * 在一个事务中批量写入读卡事件并累加统计
+     */
+    public void insertTapEvents(List<TapEvent> events) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (TapEvent event : events) {
+                values.clear();
+                values.put(COLUMN_TAG_ID, event.tagId);
+                values.put(COLUMN_TIME, event.time);
+                values.put(COLUMN_OUTCOME, event.outcome.name());
+                db.insert(TABLE_TAP_EVENTS, null, values);
+
+                String outcomeColumn;
+                switch (event.outcome) {
+                    case COMPLETE: outcomeColumn = COLUMN_COMPLETE_COUNT; break;
+                    case PARTIAL: outcomeColumn = COLUMN_PARTIAL_COUNT; break;
+                    default: outcomeColumn = COLUMN_ABORTED_COUNT; break;
+                }
+                // 读到 NDEF 数据才更新最近读取时间
+                long readTime = event.outcome == TapEvent.Outcome.ABORTED ? 0 : event.time;
+                // 事件可能在标签删除之后才写入，此时不再创建统计行
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_TAG_STATS + " (" + COLUMN_TAG_ID + ") SELECT ?" +
+                                " WHERE EXISTS (SELECT 1 FROM " + TABLE_NAME + " WHERE " + COLUMN_ID + " = ?)",
+                        new Object[]{event.tagId, event.tagId});
+                db.execSQL("UPDATE " + TABLE_TAG_STATS + " SET " +
+                                COLUMN_TAP_COUNT + " = " + COLUMN_TAP_COUNT + " + 1, " +
+                                outcomeColumn + " = " + outcomeColumn + " + 1, " +
+                                COLUMN_LAST_READ_TIME + " = MAX(" + COLUMN_LAST_READ_TIME + ", ?) " +
+                                "WHERE " + COLUMN_TAG_ID + " = ?",
+                        new Object[]{readTime, event.tagId});
+            }
+            db.execSQL("DELETE FROM " + TABLE_TAP_EVENTS + " WHERE " + COLUMN_ID + " <= " +
+                    "(SELECT MAX(" + COLUMN_ID + ") FROM " + TABLE_TAP_EVENTS + ") - " + MAX_TAP_EVENTS);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    /**
+     * 获取所有标签的读卡统计，键为标签 ID
+     */
+    public Map<Long, TagStats> getAllTagStats() {
+        Map<Long, TagStats> stats = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_TAG_STATS, null, null, null, null, null, null);
+
+        if (cursor.moveToFirst()) {
+            do {
+                TagStats item = new TagStats(
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TAG_ID)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TAP_COUNT)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_COMPLETE_COUNT)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_PARTIAL_COUNT)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ABORTED_COUNT)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_READ_TIME)));
+                stats.put(item.getTagId(), item);
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
         db.close();
+        return stats;
     }
 }
@@ -0,0 +1,237 @@
+package com.devhjz.ndefemulator.hce;
+
+import java.util.Arrays;
+
+/**
+ * Type 4 逻辑之下的 ISO 7816-4 传输层：
+ * 重组命令链（CLA bit 0x10）的 C-APDU，解析短/扩展 Le，
+ * 并把超出单次响应上限的 R-APDU 拆分为 61xx + GET RESPONSE 序列。
+ * 只在 APDU 线程中使用，缓冲区预先分配
+ */
+public class ApduTransport {
+
+    public interface CommandHandler {
+        /**
+         * 处理一条完整的 C-APDU：命令数据位于 apdu[dataOffset, dataOffset + lc)，
+         * ne 为期望的最大响应数据长度（未携带 Le 时为 0）。返回数据 + SW
+         */
+        byte[] onCommand(byte[] apdu, int dataOffset, int lc, int ne);
+    }
+
+    // 短 APDU 单次响应的最大数据长度
+    private static final int SHORT_RESPONSE_DATA = 256;
+    // 扩展 APDU 单次响应的最大数据长度
+    private static final int EXTENDED_RESPONSE_DATA = 1024;
+    // 单条命令可交给上层的最大 Ne，超出部分由读卡器再次读取
+    public static final int MAX_NE = 0x1000;
+    private static final int MAX_CHAIN_DATA = 1024;
+
+    private static final byte CLA_CHAINING = 0x10;
+    private static final byte INS_GET_RESPONSE = (byte) 0xc0;
+
+    private static final byte[] SUCCESS_SW = {(byte) 0x90, (byte) 0x00};
+    private static final byte[] WRONG_LENGTH_SW = {(byte) 0x67, (byte) 0x00};
+    private static final byte[] LAST_COMMAND_EXPECTED_SW = {(byte) 0x68, (byte) 0x83};
+    private static final byte[] CONDITIONS_NOT_SATISFIED_SW = {(byte) 0x69, (byte) 0x85};
+
+    private final CommandHandler handler;
+
+    // 命令链状态
+    private final byte[] chainData = new byte[MAX_CHAIN_DATA];
+    private int chainLength;
+    private boolean chaining;
+    private byte chainIns;
+
+    // 待 GET RESPONSE 取走的响应数据
+    private final byte[] pending = new byte[MAX_NE];
+    private int pendingOffset;
+    private int pendingLength;
+
+    public ApduTransport(CommandHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 会话结束时丢弃未完成的命令链和响应
+     */
+    public void reset() {
+        chaining = false;
+        chainLength = 0;
+        // 待取走的响应可能是解密后的标签内容
+        Arrays.fill(pending, (byte) 0);
+        pendingOffset = 0;
+        pendingLength = 0;
+    }
+
+    public byte[] process(byte[] apdu) {
+        if (apdu == null || apdu.length < 4) {
+            reset();
+            return WRONG_LENGTH_SW;
+        }
+
+        int dataOffset;
+        int lc;
+        int ne;
+        boolean extended;
+        // 解析 Lc / Le：case 1, 2S, 3S, 4S, 2E, 3E, 4E
+        if (apdu.length == 4) {
+            dataOffset = 4; lc = 0; ne = 0; extended = false;
+        } else if (apdu.length == 5) {
+            dataOffset = 5; lc = 0; ne = shortLe(apdu[4]); extended = false;
+        } else if (apdu[4] != 0) {
+            dataOffset = 5; lc = apdu[4] & 0xff; extended = false;
+            if (apdu.length == 5 + lc) {
+                ne = 0;
+            } else if (apdu.length == 6 + lc) {
+                ne = shortLe(apdu[apdu.length - 1]);
+            } else {
+                reset();
+                return WRONG_LENGTH_SW;
+            }
+        } else if (apdu.length == 7) {
+            dataOffset = 7; lc = 0; ne = extendedLe(apdu[5], apdu[6]); extended = true;
+        } else if (apdu.length > 7) {
+            dataOffset = 7; lc = ((apdu[5] & 0xff) << 8) | (apdu[6] & 0xff); extended = true;
+            if (apdu.length == 7 + lc) {
+                ne = 0;
+            } else if (apdu.length == 9 + lc) {
+                ne = extendedLe(apdu[apdu.length - 2], apdu[apdu.length - 1]);
+            } else {
+                reset();
+                return WRONG_LENGTH_SW;
+            }
+        } else {
+            reset();
+            return WRONG_LENGTH_SW;
+        }
+
+        byte cla = apdu[0];
+        byte ins = apdu[1];
+
+        if (ins == INS_GET_RESPONSE && !chaining) {
+            return getResponse(ne == 0 ? SHORT_RESPONSE_DATA : ne, extended);
+        }
+        // 新命令使未取走的响应失效
+        pendingLength = 0;
+        pendingOffset = 0;
+
+        if ((cla & CLA_CHAINING) != 0) {
+            if (chaining && ins != chainIns) {
+                reset();
+                return LAST_COMMAND_EXPECTED_SW;
+            }
+            if (chainLength + lc > MAX_CHAIN_DATA) {
+                reset();
+                return WRONG_LENGTH_SW;
+            }
+            System.arraycopy(apdu, dataOffset, chainData, chainLength, lc);
+            chainLength += lc;
+            chaining = true;
+            chainIns = ins;
+            return SUCCESS_SW;
+        }
+
+        byte[] command = apdu;
+        int commandDataOffset = dataOffset;
+        int commandLc = lc;
+        if (chaining) {
+            if (ins != chainIns || chainLength + lc > MAX_CHAIN_DATA) {
+                reset();
+                return ins != chainIns ? LAST_COMMAND_EXPECTED_SW : WRONG_LENGTH_SW;
+            }
+            System.arraycopy(apdu, dataOffset, chainData, chainLength, lc);
+            chainLength += lc;
+            command = buildCommand(apdu, ne);
+            commandLc = chainLength;
+            // 重建的命令中 Lc 为 1 字节或扩展的 3 字节（首字节为 0）
+            commandDataOffset = chainLength == 0 ? 4 : (command[4] == 0 ? 7 : 5);
+            chaining = false;
+            chainLength = 0;
+        }
+
+        byte[] response = handler.onCommand(command, commandDataOffset, commandLc, Math.min(ne, MAX_NE));
+        return split(response, Math.min(ne == 0 ? SHORT_RESPONSE_DATA : ne, extended ? EXTENDED_RESPONSE_DATA : SHORT_RESPONSE_DATA));
+    }
+
+    private static int shortLe(byte le) {
+        return le == 0 ? 256 : le & 0xff;
+    }
+
+    private static int extendedLe(byte hi, byte lo) {
+        int le = ((hi & 0xff) << 8) | (lo & 0xff);
+        return le == 0 ? 65536 : le;
+    }
+
+    /**
+     * 用链中累积的数据和最后一条命令的头部重建完整 C-APDU（去掉链标志）
+     */
+    private byte[] buildCommand(byte[] last, int ne) {
+        boolean extended = chainLength > 255 || ne > 256;
+        int lcLength = chainLength == 0 ? 0 : (extended ? 3 : 1);
+        int leLength = ne == 0 ? 0 : (extended ? (lcLength == 0 ? 3 : 2) : 1);
+        byte[] command = new byte[4 + lcLength + chainLength + leLength];
+        command[0] = (byte) (last[0] & ~CLA_CHAINING);
+        command[1] = last[1];
+        command[2] = last[2];
+        command[3] = last[3];
+        int pos = 4;
+        if (lcLength == 1) {
+            command[pos++] = (byte) chainLength;
+        } else if (lcLength == 3) {
+            command[pos++] = 0;
+            command[pos++] = (byte) (chainLength >> 8);
+            command[pos++] = (byte) chainLength;
+        }
+        System.arraycopy(chainData, 0, command, pos, chainLength);
+        pos += chainLength;
+        if (leLength == 1) {
+            command[pos] = (byte) (ne == 256 ? 0 : ne);
+        } else if (leLength > 1) {
+            if (leLength == 3) {
+                command[pos++] = 0;
+            }
+            command[pos++] = (byte) (ne >= 65536 ? 0 : ne >> 8);
+            command[pos] = (byte) (ne >= 65536 ? 0 : ne);
+        }
+        return command;
+    }
+
+    /**
+     * 响应数据超出单次上限时，返回第一段并以 61xx 提示剩余长度
+     */
+    private byte[] split(byte[] response, int limit) {
+        int dataLength = response.length - 2;
+        if (dataLength <= limit || response[dataLength] != SUCCESS_SW[0] || response[dataLength + 1] != SUCCESS_SW[1]) {
+            return response;
+        }
+        int remaining = Math.min(dataLength - limit, pending.length);
+        System.arraycopy(response, limit, pending, 0, remaining);
+        pendingOffset = 0;
+        pendingLength = remaining;
+        return chunk(response, 0, limit, remaining);
+    }
+
+    private byte[] getResponse(int ne, boolean extended) {
+        if (pendingLength == 0) {
+            return CONDITIONS_NOT_SATISFIED_SW;
+        }
+        int length = Math.min(pendingLength, Math.min(ne, extended ? EXTENDED_RESPONSE_DATA : SHORT_RESPONSE_DATA));
+        byte[] out = chunk(pending, pendingOffset, length, pendingLength - length);
+        pendingOffset += length;
+        pendingLength -= length;
+        return out;
+    }
+
+    private static byte[] chunk(byte[] src, int offset, int length, int remaining) {
+        byte[] out = new byte[length + 2];
+        System.arraycopy(src, offset, out, 0, length);
+        if (remaining > 0) {
+            out[length] = 0x61;
+            out[length + 1] = (byte) (remaining > 0xff ? 0x00 : remaining);
+        } else {
+            out[length] = SUCCESS_SW[0];
+            out[length + 1] = SUCCESS_SW[1];
+        }
+        return out;
+    }
+}
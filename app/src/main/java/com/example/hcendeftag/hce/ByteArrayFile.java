@@ -0,0 +1,29 @@
+package com.devhjz.ndefemulator.hce;
+
+import java.util.Arrays;
+
+/**
+ * 完整保存在堆内存中的文件
+ */
+public class ByteArrayFile implements ElementaryFile {
+    private final byte[] data;
+
+    public ByteArrayFile(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int length() {
+        return data.length;
+    }
+
+    @Override
+    public void read(int offset, byte[] dst, int dstOffset, int length) {
+        System.arraycopy(data, offset, dst, dstOffset, length);
+    }
+
+    @Override
+    public void wipe() {
+        Arrays.fill(data, (byte) 0);
+    }
+}
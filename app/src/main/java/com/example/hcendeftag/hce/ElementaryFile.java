@@ -0,0 +1,19 @@
+package com.devhjz.ndefemulator.hce;
+
+/**
+ * Type 4 标签中的一个文件（CC 文件或 NDEF 文件），READ_BINARY 按偏移读取
+ */
+public interface ElementaryFile {
+
+    int length();
+
+    /**
+     * 从 offset 处复制 length 字节到 dst，调用方保证不越界
+     */
+    void read(int offset, byte[] dst, int dstOffset, int length);
+
+    /**
+     * 清零堆上保存的内容，之后不再读取
+     */
+    void wipe();
+}
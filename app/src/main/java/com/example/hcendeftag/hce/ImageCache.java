@@ -0,0 +1,43 @@
+package com.devhjz.ndefemulator.hce;
+
+import android.util.LruCache;
+
+/**
+ * 按内容哈希缓存已打开的 NDEF 文件及其响应切片，内容相同的标签共享同一条目。
+ * 大小按堆上的字节数计算，映射文件只计窗口缓存。
+ * 加密标签在这里保存解密后的镜像，条目被移除时清零；正在模拟的条目推迟到切换标签后再清零
+ */
+public class ImageCache extends LruCache<String, ResponseSlices> {
+
+    private static final int MAX_BYTES = 256 * 1024;
+    private static final int MAPPED_ENTRY_BYTES = 1024;
+
+    private ResponseSlices active;
+
+    public ImageCache() {
+        super(MAX_BYTES);
+    }
+
+    @Override
+    protected int sizeOf(String key, ResponseSlices value) {
+        return value.isMapped() ? MAPPED_ENTRY_BYTES : value.length();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, String key, ResponseSlices oldValue, ResponseSlices newValue) {
+        if (oldValue != active && oldValue != newValue) {
+            oldValue.wipe();
+        }
+    }
+
+    /**
+     * 设置正在模拟的文件，被替换的文件若已不在缓存中则清零
+     */
+    public void setActive(ResponseSlices slices) {
+        ResponseSlices previous = active;
+        active = slices;
+        if (previous != null && previous != slices && !snapshot().containsValue(previous)) {
+            previous.wipe();
+        }
+    }
+}
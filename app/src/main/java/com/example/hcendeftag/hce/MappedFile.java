@@ -0,0 +1,84 @@
+package com.devhjz.ndefemulator.hce;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 以内存映射方式读取的私有文件，用于大体积 NDEF 镜像。
+ * 堆上只保留两个固定大小的窗口缓存，与文件大小无关
+ */
+public class MappedFile implements ElementaryFile {
+
+    private static final int WINDOW_SIZE = 512;
+    private static final int WINDOW_COUNT = 2;
+
+    private final MappedByteBuffer buffer;
+    private final int length;
+
+    // 窗口缓存：起始偏移、数据，以及最近使用的窗口下标
+    private final int[] windowStart = new int[WINDOW_COUNT];
+    private final byte[][] windows = new byte[WINDOW_COUNT][WINDOW_SIZE];
+    private int lastWindow;
+
+    public MappedFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // 关闭通道后映射依然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        length = buffer.capacity();
+        for (int i = 0; i < WINDOW_COUNT; i++) {
+            windowStart[i] = -1;
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void read(int offset, byte[] dst, int dstOffset, int count) {
+        while (count > 0) {
+            int start = offset - (offset % WINDOW_SIZE);
+            byte[] window = window(start);
+            int inWindow = offset - start;
+            int n = Math.min(count, Math.min(WINDOW_SIZE, length - start) - inWindow);
+            System.arraycopy(window, inWindow, dst, dstOffset, n);
+            offset += n;
+            dstOffset += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * 映射本身由 GC 释放，这里只清空窗口缓存
+     */
+    @Override
+    public void wipe() {
+        for (int i = 0; i < WINDOW_COUNT; i++) {
+            Arrays.fill(windows[i], (byte) 0);
+            windowStart[i] = -1;
+        }
+    }
+
+    private byte[] window(int start) {
+        for (int i = 0; i < WINDOW_COUNT; i++) {
+            if (windowStart[i] == start) {
+                lastWindow = i;
+                return windows[i];
+            }
+        }
+        // 替换最近未使用的窗口
+        int slot = (lastWindow + 1) % WINDOW_COUNT;
+        buffer.position(start);
+        buffer.get(windows[slot], 0, Math.min(WINDOW_SIZE, length - start));
+        windowStart[slot] = start;
+        lastWindow = slot;
+        return windows[slot];
+    }
+}
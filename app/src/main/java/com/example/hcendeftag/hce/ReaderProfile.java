@@ -0,0 +1,100 @@
+package com.devhjz.ndefemulator.hce;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 某一类读卡器（同一指纹）学习到的配置：CC 中声明的 MLe 以及常用的读取模式
+ */
+public class ReaderProfile {
+
+    // 默认声明的最大 R-APDU 数据长度，与原 CC 文件保持一致
+    public static final int DEFAULT_MLE = 0x3b;
+    // 短 APDU 下可声明的最大值
+    public static final int MAX_MLE = 0xff;
+    // 读取模式的编码版本，与 ResponseSlices.key 对应
+    private static final int PATTERN_VERSION = 3;
+
+    private final String fingerprint;
+    private int sessions;
+    private int completedSessions;
+    private int maxNdefLe;
+    private int preferredMle = DEFAULT_MLE;
+    private boolean probeFailed;
+    private long lastSeen;
+    private List<Long> readPattern = new ArrayList<>();
+
+    public ReaderProfile(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * 会话结束时更新配置。
+     * 读卡器每次都用满我们声明的 MLe 时，下次尝试声明更大的 MLe 以减少往返；
+     * 若尝试期间会话未能完整读取，则回退到默认值且不再尝试
+     */
+    public void onSessionEnd(ReaderSession session, int advertisedMle, boolean complete) {
+        sessions++;
+        lastSeen = System.currentTimeMillis();
+        maxNdefLe = Math.max(maxNdefLe, session.getMaxNdefLe());
+
+        boolean probing = advertisedMle > DEFAULT_MLE;
+        if (complete) {
+            completedSessions++;
+            readPattern = new ArrayList<>(session.getReadPattern());
+            if (!probing && !probeFailed && session.getMaxNdefLe() >= advertisedMle) {
+                preferredMle = MAX_MLE;
+            }
+        } else if (probing && session.getNdefReads() > 0) {
+            preferredMle = DEFAULT_MLE;
+            probeFailed = true;
+            readPattern.clear();
+        }
+    }
+
+    public String getFingerprint() { return fingerprint; }
+    public int getSessions() { return sessions; }
+    public int getCompletedSessions() { return completedSessions; }
+    public int getPreferredMle() { return preferredMle; }
+    public long getLastSeen() { return lastSeen; }
+    public List<Long> getReadPattern() { return readPattern; }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject obj = new JSONObject();
+        obj.put("fingerprint", fingerprint);
+        obj.put("sessions", sessions);
+        obj.put("completed", completedSessions);
+        obj.put("maxLe", maxNdefLe);
+        obj.put("mle", preferredMle);
+        obj.put("probeFailed", probeFailed);
+        obj.put("lastSeen", lastSeen);
+        JSONArray pattern = new JSONArray();
+        for (Long key : readPattern) {
+            pattern.put(key);
+        }
+        obj.put("pattern", pattern);
+        obj.put("patternVersion", PATTERN_VERSION);
+        return obj;
+    }
+
+    public static ReaderProfile fromJson(JSONObject obj) throws JSONException {
+        ReaderProfile profile = new ReaderProfile(obj.getString("fingerprint"));
+        profile.sessions = obj.optInt("sessions");
+        profile.completedSessions = obj.optInt("completed");
+        profile.maxNdefLe = obj.optInt("maxLe");
+        profile.preferredMle = obj.optInt("mle", DEFAULT_MLE);
+        profile.probeFailed = obj.optBoolean("probeFailed");
+        profile.lastSeen = obj.optLong("lastSeen");
+        JSONArray pattern = obj.optJSONArray("pattern");
+        if (pattern != null && obj.optInt("patternVersion", 1) == PATTERN_VERSION) {
+            for (int i = 0; i < pattern.length() && i < ReaderSession.MAX_READ_PATTERN; i++) {
+                profile.readPattern.add(pattern.getLong(i));
+            }
+        }
+        return profile;
+    }
+}
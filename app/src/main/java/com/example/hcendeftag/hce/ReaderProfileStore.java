@@ -0,0 +1,82 @@
+package com.devhjz.ndefemulator.hce;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 读卡器配置的持久化存储，启动时一次性载入内存，写入通过 SharedPreferences.apply() 异步完成。
+ * 指纹由读卡器的指令序列决定，数量不受我们控制，内存与持久化的配置都按最近使用淘汰，至多 MAX_PROFILES 个
+ */
+public class ReaderProfileStore {
+    private static final String TAG = "ReaderProfileStore";
+    private static final String PREFS_NAME = "reader_profiles";
+    static final int MAX_PROFILES = 32;
+
+    private final SharedPreferences prefs;
+    // 按访问顺序排列，最久未使用的在最前
+    private final Map<String, ReaderProfile> profiles = new LinkedHashMap<String, ReaderProfile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ReaderProfile> eldest) {
+            if (size() <= MAX_PROFILES) return false;
+            prefs.edit().remove(eldest.getKey()).apply();
+            return true;
+        }
+    };
+
+    public ReaderProfileStore(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        List<ReaderProfile> loaded = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            try {
+                loaded.add(ReaderProfile.fromJson(new JSONObject(String.valueOf(entry.getValue()))));
+            } catch (JSONException e) {
+                Log.e(TAG, "Error loading reader profile", e);
+            }
+        }
+        // 按最近出现时间载入，使访问顺序与上次运行一致
+        Collections.sort(loaded, (a, b) -> Long.compare(a.getLastSeen(), b.getLastSeen()));
+        for (ReaderProfile profile : loaded) {
+            profiles.put(profile.getFingerprint(), profile);
+        }
+    }
+
+    /**
+     * 获取指纹对应的配置，未知读卡器返回新的默认配置
+     */
+    public ReaderProfile get(String fingerprint) {
+        ReaderProfile profile = profiles.get(fingerprint);
+        if (profile == null) {
+            profile = new ReaderProfile(fingerprint);
+            profiles.put(fingerprint, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * 保存配置；配置已被淘汰时重新放入，淘汰最久未使用的读卡器
+     */
+    public void save(ReaderProfile profile) {
+        if (profiles.get(profile.getFingerprint()) != profile) {
+            profiles.put(profile.getFingerprint(), profile);
+        }
+        try {
+            prefs.edit().putString(profile.getFingerprint(), profile.toJson().toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "Error saving reader profile", e);
+        }
+    }
+
+    int size() {
+        return profiles.size();
+    }
+}
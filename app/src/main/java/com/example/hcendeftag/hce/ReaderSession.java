@@ -0,0 +1,81 @@
+package com.devhjz.ndefemulator.hce;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一次读卡器会话（从首条 APDU 到 onDeactivated）的行为记录，
+ * 用于生成读卡器指纹并在会话结束时更新学习到的配置
+ */
+public class ReaderSession {
+
+    // 指纹最多记录的指令数，超过后只记录首个 READ_BINARY 之前的部分
+    private static final int MAX_FINGERPRINT_TOKENS = 8;
+    // 记录的 NDEF 读取模式最大条数
+    public static final int MAX_READ_PATTERN = 64;
+
+    private final StringBuilder fingerprint = new StringBuilder();
+    private int tokenCount;
+    private boolean fingerprintComplete;
+
+    private int ndefReads;
+    private int maxNdefLe;
+    private int ndefReadEnd;
+    private final List<Long> readPattern = new ArrayList<>();
+
+    /**
+     * 记录一条已识别的 SELECT 指令（A = 应用，C = CC 文件，N = NDEF 文件）
+     */
+    public void onSelect(char target) {
+        appendToken(String.valueOf(target));
+    }
+
+    /**
+     * 记录一条无法识别的指令，保留 INS/P1/P2 作为指纹的一部分
+     */
+    public void onUnknown(byte[] apdu) {
+        if (apdu.length < 4) {
+            appendToken("X");
+            return;
+        }
+        appendToken(String.format("X%02x%02x%02x", apdu[1], apdu[2], apdu[3]));
+    }
+
+    /**
+     * 记录 READ_BINARY；首个 READ_BINARY 的 Le 作为指纹的结尾
+     */
+    public void onRead(boolean ndefFile, int offset, int le) {
+        if (!fingerprintComplete) {
+            appendToken("R" + le);
+            fingerprintComplete = true;
+        }
+        if (ndefFile) {
+            ndefReads++;
+            maxNdefLe = Math.max(maxNdefLe, le);
+            ndefReadEnd = Math.max(ndefReadEnd, offset + le);
+            if (readPattern.size() < MAX_READ_PATTERN) {
+                readPattern.add(ResponseSlices.key(offset, le));
+            }
+        }
+    }
+
+    private void appendToken(String token) {
+        if (fingerprintComplete || tokenCount >= MAX_FINGERPRINT_TOKENS) return;
+        if (fingerprint.length() > 0) fingerprint.append('.');
+        fingerprint.append(token);
+        tokenCount++;
+    }
+
+    public boolean isFingerprintComplete() { return fingerprintComplete; }
+    public String getFingerprint() { return fingerprint.toString(); }
+    public int getNdefReads() { return ndefReads; }
+    public int getMaxNdefLe() { return maxNdefLe; }
+    public List<Long> getReadPattern() { return readPattern; }
+
+    /**
+     * 是否已读取到 NDEF 文件末尾
+     */
+    public boolean isNdefReadComplete(int ndefFileLength) {
+        return ndefReads > 0 && ndefReadEnd >= ndefFileLength;
+    }
+}
@@ -0,0 +1,122 @@
+package com.devhjz.ndefemulator.hce;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件的 READ_BINARY 响应切片缓存（数据 + 9000）。
+ * 对已知读卡器可按其读取模式预先生成全部切片，点击时直接返回；
+ * 缓存条数有上限，映射文件的堆占用不随文件大小增长
+ */
+public class ResponseSlices {
+
+    private static final int MAX_SLICES = 128;
+    private static final byte[] SUCCESS_SW = new byte[]{(byte) 0x90, (byte) 0x00};
+
+    // READ_BINARY (B1) 响应数据对象的标签
+    private static final byte DDO_TAG = 0x53;
+
+    private final ElementaryFile file;
+    private final Map<Long, byte[]> slices = new HashMap<>();
+
+    public ResponseSlices(ElementaryFile file) {
+        this.file = file;
+    }
+
+    public ResponseSlices(byte[] file) {
+        this(new ByteArrayFile(file));
+    }
+
+    // 只缓存不超过短 APDU 上限的切片
+    private static final int MAX_CACHED_SLICE = 256;
+    private static final int LE_BITS = 13;
+    private static final int LE_MASK = (1 << LE_BITS) - 1;
+
+    /**
+     * 切片键：offset（B1 最大 24 位）占高位，Le（最大 ApduTransport.MAX_NE）占低 13 位
+     */
+    public static long key(int offset, int le) {
+        return ((long) offset << LE_BITS) | (le & LE_MASK);
+    }
+
+    public int length() {
+        return file.length();
+    }
+
+    public boolean isMapped() {
+        return file instanceof MappedFile;
+    }
+
+    /**
+     * 按学习到的读取模式预生成切片
+     */
+    public void prepare(List<Long> pattern) {
+        if (pattern == null) return;
+        for (Long key : pattern) {
+            read((int) (key >>> LE_BITS), (int) (key & LE_MASK));
+        }
+    }
+
+    /**
+     * 返回 offset 处最多 le 字节的响应，offset 越界时返回 null。
+     * 返回的数组可能是缓存中共享的切片，调用方只能读取，不得修改
+     */
+    public byte[] read(int offset, int le) {
+        if (offset < 0 || offset >= file.length()) return null;
+        long key = key(offset, le);
+        byte[] response = slices.get(key);
+        if (response != null) return response;
+
+        int length = Math.min(le, file.length() - offset);
+        response = new byte[length + 2];
+        file.read(offset, response, 0, length);
+        System.arraycopy(SUCCESS_SW, 0, response, length, 2);
+        if (length <= MAX_CACHED_SLICE && slices.size() < MAX_SLICES) {
+            slices.put(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * 清零文件内容与已缓存的切片，用于释放解密后的镜像
+     */
+    public void wipe() {
+        for (byte[] response : slices.values()) {
+            Arrays.fill(response, (byte) 0);
+        }
+        slices.clear();
+        file.wipe();
+    }
+
+    /**
+     * READ_BINARY (INS B1)：响应数据封装在数据对象 53 中，用于大文件的高位偏移读取，越界时返回 null
+     */
+    public byte[] readOdo(int offset, int le) {
+        if (offset < 0 || offset >= file.length()) return null;
+
+        // BER-TLV 长度：0-127 一字节，128-255 为 81 LL，更长（扩展 Le）为 82 HH LL
+        int remaining = file.length() - offset;
+        int length = Math.min(le - 2, remaining);
+        if (length > 0x7f) length = Math.min(le - 3, remaining);
+        if (length > 0xff) length = Math.min(le - 4, remaining);
+        if (length <= 0) return null;
+        int header = length > 0xff ? 4 : length > 0x7f ? 3 : 2;
+        byte[] response = new byte[header + length + 2];
+        response[0] = DDO_TAG;
+        if (header == 4) {
+            response[1] = (byte) 0x82;
+            response[2] = (byte) (length >> 8);
+            response[3] = (byte) length;
+        } else if (header == 3) {
+            response[1] = (byte) 0x81;
+            response[2] = (byte) length;
+        } else {
+            response[1] = (byte) length;
+        }
+        file.read(offset, response, header, length);
+        System.arraycopy(SUCCESS_SW, 0, response, header + length, 2);
+        return response;
+    }
+}
@@ -0,0 +1,112 @@
+package com.devhjz.ndefemulator.ingest;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 把十六进制文本转换为字节流。
+ * 忽略空白、常见分隔符（: - , ;）、0x 前缀以及 # 开头到行尾的注释
+ */
+public class HexInputStream extends FilterInputStream {
+
+    public HexInputStream(InputStream in) {
+        // 识别 0x 前缀需要回退一个字符
+        super(in.markSupported() ? in : new BufferedInputStream(in));
+    }
+
+    /**
+     * 判断数据开头是否像十六进制文本
+     */
+    public static boolean looksLikeHex(byte[] head, int length) {
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            int c = head[i] & 0xff;
+            if (c == '#') {
+                while (i < length && head[i] != '\n') {
+                    i++;
+                }
+            } else if (Character.digit(c, 16) >= 0) {
+                digits++;
+            } else if (!isSeparator(c) && c != 'x' && c != 'X') {
+                return false;
+            }
+        }
+        return digits > 0;
+    }
+
+    private static boolean isSeparator(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == ':' || c == '-' || c == ',' || c == ';';
+    }
+
+    @Override
+    public int read() throws IOException {
+        int hi = nextDigit();
+        if (hi < 0) return -1;
+        int lo = nextDigit();
+        if (lo < 0) {
+            throw new IOException("十六进制位数为奇数");
+        }
+        return (hi << 4) | lo;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = 0;
+        while (count < len) {
+            int value = read();
+            if (value < 0) break;
+            b[off + count++] = (byte) value;
+        }
+        return count == 0 && len > 0 ? -1 : count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * 返回下一个十六进制数字的值，流结束时返回 -1
+     */
+    private int nextDigit() throws IOException {
+        while (true) {
+            int c = in.read();
+            if (c < 0) return -1;
+            if (c == '#') {
+                while (c >= 0 && c != '\n') {
+                    c = in.read();
+                }
+                continue;
+            }
+            if (c == '0') {
+                // 0x 前缀：只在后面紧跟 x 时跳过，读取到的 0 仍可能是数字
+                in.mark(1);
+                int next = in.read();
+                if (next == 'x' || next == 'X') continue;
+                in.reset();
+                return 0;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit >= 0) return digit;
+            if (!isSeparator(c)) {
+                throw new IOException("非十六进制字符: " + (char) c);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.devhjz.ndefemulator.ingest;
+
+import android.content.Context;
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.devhjz.ndefemulator.compiler.CompiledImage;
+import com.devhjz.ndefemulator.compiler.NdefCompileException;
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.compiler.TagSavePipeline;
+import com.devhjz.ndefemulator.database.NdefTagDatabase;
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 批量导入原始 NDEF 文件的流水线：
+ * 读取线程顺序解析文件（或 zip 中的条目）→ 多个工作线程把消息映射为 NdefTag 并编译 →
+ * 单个写入线程按批在一个事务中插入。各阶段之间用有界队列连接，解析不会领先写入太多。
+ * 导入的标签放入以来源文件名命名的文件夹
+ */
+public class NdefImportPipeline {
+    private static final String TAG = "NdefImportPipeline";
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int BATCH_SIZE = 200;
+
+    public interface Source {
+        String getName();
+        InputStream open() throws IOException;
+    }
+
+    public interface Callback {
+        void onProgress(int imported, int failed);
+        void onFinished(int imported, int failed);
+    }
+
+    private static class ParsedMessage {
+        final String name;
+        final String folder;
+        final NdefMessage message;
+
+        ParsedMessage(String name, String folder, NdefMessage message) {
+            this.name = name;
+            this.folder = folder;
+            this.message = message;
+        }
+    }
+
+    // 队列结束标记
+    private static final ParsedMessage END_OF_MESSAGES = new ParsedMessage(null, null, null);
+    private static final NdefTag END_OF_TAGS = new NdefTag();
+
+    private final Context context;
+    private final NdefTagDatabase database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    private final BlockingQueue<ParsedMessage> messages = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<NdefTag> tags = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+
+    public NdefImportPipeline(Context context, NdefTagDatabase database) {
+        this.context = context.getApplicationContext();
+        this.database = database;
+    }
+
+    /**
+     * 开始导入，立即返回，进度与结果回调到主线程。每个实例只能启动一次
+     */
+    public void start(List<Source> sources, Callback callback) {
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount + 2);
+        runningWorkers.set(workerCount);
+        executor.execute(() -> read(sources));
+        for (int i = 0; i < workerCount; i++) {
+            executor.execute(this::compile);
+        }
+        executor.execute(() -> write(callback));
+        executor.shutdown();
+    }
+
+    private void read(List<Source> sources) {
+        try {
+            for (Source source : sources) {
+                String folder = source.getName();
+                try (InputStream in = source.open()) {
+                    if (folder.toLowerCase(Locale.ROOT).endsWith(".zip")) {
+                        try (ZipInputStream zip = new ZipInputStream(in)) {
+                            ZipEntry entry;
+                            while ((entry = zip.getNextEntry()) != null) {
+                                if (!entry.isDirectory()) {
+                                    readEntry(zip, baseName(entry.getName()), folder);
+                                }
+                            }
+                        }
+                    } else {
+                        readEntry(in, folder, folder);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error reading " + folder, e);
+                    failed.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < workerCount; i++) {
+                putUninterruptibly(messages, END_OF_MESSAGES);
+            }
+        }
+    }
+
+    /**
+     * 逐条解析一个文件中的消息；格式错误的消息计为失败，能分界时继续读取后续消息
+     */
+    private void readEntry(InputStream in, String name, String folder) throws InterruptedException {
+        int index = 0;
+        NdefStreamParser parser;
+        try {
+            parser = NdefStreamParser.open(in, name);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening " + name, e);
+            failed.incrementAndGet();
+            return;
+        }
+        while (true) {
+            NdefMessage message;
+            try {
+                message = parser.next();
+            } catch (FormatException e) {
+                Log.w(TAG, "Malformed NDEF message in " + name + ": " + e.getMessage());
+                failed.incrementAndGet();
+                continue;
+            } catch (IOException e) {
+                Log.w(TAG, "Error reading " + name, e);
+                failed.incrementAndGet();
+                return;
+            }
+            if (message == null) return;
+            index++;
+            messages.put(new ParsedMessage(index == 1 ? name : name + " #" + index, folder, message));
+        }
+    }
+
+    private void compile() {
+        try {
+            while (true) {
+                ParsedMessage parsed = messages.take();
+                if (parsed == END_OF_MESSAGES) break;
+
+                NdefTag tag = new NdefTag(parsed.name);
+                tag.setFolderName(parsed.folder);
+                for (NdefRecord record : parsed.message.getRecords()) {
+                    tag.getRecords().add(NdefTagCompiler.decompile(record));
+                }
+                try {
+                    CompiledImage image = NdefTagCompiler.compile(tag);
+                    TagSavePipeline.attachImage(context, tag, image);
+                } catch (NdefCompileException | GeneralSecurityException e) {
+                    Log.w(TAG, "Error compiling " + parsed.name + ": " + e.getMessage());
+                    failed.incrementAndGet();
+                    continue;
+                }
+                tags.put(tag);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 最后一个退出的工作线程通知写入线程
+            if (runningWorkers.decrementAndGet() == 0) {
+                putUninterruptibly(tags, END_OF_TAGS);
+            }
+        }
+    }
+
+    private void write(Callback callback) {
+        int imported = 0;
+        List<NdefTag> batch = new ArrayList<>(BATCH_SIZE);
+        boolean end = false;
+        try {
+            while (!end) {
+                NdefTag tag = tags.take();
+                if (tag == END_OF_TAGS) {
+                    end = true;
+                } else {
+                    batch.add(tag);
+                }
+                if (batch.size() >= BATCH_SIZE || (end && !batch.isEmpty())) {
+                    try {
+                        imported += database.insertNdefTags(batch);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Error inserting " + batch.size() + " tags", e);
+                        failed.addAndGet(batch.size());
+                    }
+                    batch.clear();
+                    int progress = imported;
+                    mainHandler.post(() -> callback.onProgress(progress, failed.get()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int total = imported;
+        mainHandler.post(() -> callback.onFinished(total, failed.get()));
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String baseName(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash >= 0 ? path.substring(slash + 1) : path;
+    }
+}
@@ -0,0 +1,254 @@
+package com.devhjz.ndefemulator.ingest;
+
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 从字节流中逐条读取原始 NDEF 消息，不把整个文件读入内存。支持三种封装：
+ * 直接拼接的消息（按 MB/ME 分界）、Type 2 标签转储中的 TLV（NDEF TLV 0x03），
+ * 以及本应用 NDEF 文件格式的 NLEN 前缀（.ndef）。
+ * 记录支持短记录 (SR)、ID 长度 (IL)、全部 TNF，分块记录 (CF) 会被重组为一条记录
+ */
+public class NdefStreamParser {
+
+    private static final int FLAG_MB = 0x80;
+    private static final int FLAG_ME = 0x40;
+    private static final int FLAG_CF = 0x20;
+    private static final int FLAG_SR = 0x10;
+    private static final int FLAG_IL = 0x08;
+    private static final int TNF_MASK = 0x07;
+
+    private static final int TLV_NULL = 0x00;
+    private static final int TLV_NDEF = 0x03;
+    private static final int TLV_PROPRIETARY = 0xfd;
+    private static final int TLV_TERMINATOR = 0xfe;
+
+    private static final int SNIFF_LENGTH = 64;
+
+    private enum Framing { BARE, TLV, NLEN }
+
+    private final InputStream in;
+    private Framing framing;
+    private boolean done;
+
+    private NdefStreamParser(InputStream in, Framing framing) {
+        this.in = in;
+        this.framing = framing;
+    }
+
+    /**
+     * 按文件名与内容选择解析方式：.hex/.txt 或看起来是十六进制文本时先解码，.ndef 按 NLEN 前缀读取，
+     * 其余根据首字节区分 TLV 与直接拼接的消息
+     */
+    public static NdefStreamParser open(InputStream raw, String name) throws IOException {
+        String lower = name == null ? "" : name.toLowerCase(Locale.ROOT);
+        InputStream in = new BufferedInputStream(raw);
+        boolean hex = lower.endsWith(".hex") || lower.endsWith(".txt");
+        if (!hex) {
+            in.mark(SNIFF_LENGTH);
+            byte[] head = new byte[SNIFF_LENGTH];
+            int length = 0;
+            int n;
+            while (length < SNIFF_LENGTH && (n = in.read(head, length, SNIFF_LENGTH - length)) > 0) {
+                length += n;
+            }
+            in.reset();
+            hex = HexInputStream.looksLikeHex(head, length);
+        }
+        if (hex) {
+            in = new BufferedInputStream(new HexInputStream(in));
+        }
+        return new NdefStreamParser(in, lower.endsWith(".ndef") ? Framing.NLEN : null);
+    }
+
+    /**
+     * 读取下一条消息，流结束时返回 null。
+     * 消息格式错误时抛出 FormatException；TLV 与 NLEN 封装下可继续读取后续消息，直接拼接的消息则无法再分界
+     */
+    public NdefMessage next() throws IOException, FormatException {
+        if (done) return null;
+        if (framing == null) {
+            in.mark(1);
+            int first = in.read();
+            if (first < 0) {
+                done = true;
+                return null;
+            }
+            in.reset();
+            framing = isTlvType(first) ? Framing.TLV : Framing.BARE;
+        }
+        switch (framing) {
+            case TLV:
+                return nextTlv();
+            case NLEN:
+                return nextNlen();
+            default:
+                try {
+                    return readMessage(in);
+                } catch (FormatException | IOException e) {
+                    done = true;
+                    throw e;
+                }
+        }
+    }
+
+    private static boolean isTlvType(int b) {
+        // 0xFD/0xFE 作为记录头时同时带有 ME 与 CF，不是有效记录
+        return b <= TLV_NDEF || b == TLV_PROPRIETARY || b == TLV_TERMINATOR;
+    }
+
+    private NdefMessage nextTlv() throws IOException, FormatException {
+        while (true) {
+            int type = in.read();
+            if (type < 0 || type == TLV_TERMINATOR) {
+                done = true;
+                return null;
+            }
+            if (type == TLV_NULL) continue;
+            int length = readByte(in);
+            if (length == 0xff) {
+                length = (readByte(in) << 8) | readByte(in);
+            }
+            if (type != TLV_NDEF) {
+                skipFully(length);
+                continue;
+            }
+            if (length == 0) continue;
+            return readMessage(new ByteArrayInputStream(readFully(in, length)));
+        }
+    }
+
+    private NdefMessage nextNlen() throws IOException, FormatException {
+        while (true) {
+            int hi = in.read();
+            if (hi < 0) {
+                done = true;
+                return null;
+            }
+            int length = (hi << 8) | readByte(in);
+            // NLEN = 0 为空消息（常见于填充），跳过
+            if (length == 0) continue;
+            return readMessage(new ByteArrayInputStream(readFully(in, length)));
+        }
+    }
+
+    /**
+     * 读取一条消息，流在消息开始前结束时返回 null
+     */
+    private static NdefMessage readMessage(InputStream in) throws IOException, FormatException {
+        List<NdefRecord> records = new ArrayList<>();
+        ByteArrayOutputStream chunks = null;
+        short chunkTnf = 0;
+        byte[] chunkType = null;
+        byte[] chunkId = null;
+        int total = 0;
+
+        while (true) {
+            int header = in.read();
+            if (header < 0) {
+                if (total == 0) return null;
+                throw new FormatException("消息缺少结束记录 (ME)");
+            }
+            boolean first = total == 0;
+            if (((header & FLAG_MB) != 0) != first) {
+                throw new FormatException(first ? "首条记录缺少 MB" : "消息中间出现 MB");
+            }
+            boolean me = (header & FLAG_ME) != 0;
+            boolean cf = (header & FLAG_CF) != 0;
+            boolean il = (header & FLAG_IL) != 0;
+            short tnf = (short) (header & TNF_MASK);
+
+            int typeLength = readByte(in);
+            long payloadLength = (header & FLAG_SR) != 0 ? readByte(in)
+                    : ((long) readByte(in) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+            int idLength = il ? readByte(in) : 0;
+            // 先检查长度再分配，避免损坏的 4 字节长度导致超大分配
+            if (payloadLength > NdefTagCompiler.MAX_NDEF_MESSAGE_SIZE) {
+                throw new FormatException("记录超过 " + NdefTagCompiler.MAX_NDEF_MESSAGE_SIZE + " 字节");
+            }
+            total += 2 + typeLength + idLength + (int) payloadLength;
+            if (total > NdefTagCompiler.MAX_NDEF_MESSAGE_SIZE) {
+                throw new FormatException("消息超过 " + NdefTagCompiler.MAX_NDEF_MESSAGE_SIZE + " 字节");
+            }
+            byte[] type = readFully(in, typeLength);
+            byte[] id = readFully(in, idLength);
+            byte[] payload = readFully(in, (int) payloadLength);
+
+            if (chunks != null) {
+                // 后续分块：TNF 为 UNCHANGED，不带类型和 ID
+                if (tnf != NdefRecord.TNF_UNCHANGED || typeLength != 0 || il) {
+                    throw new FormatException("分块记录格式错误");
+                }
+                chunks.write(payload);
+                if (!cf) {
+                    records.add(newRecord(chunkTnf, chunkType, chunkId, chunks.toByteArray()));
+                    chunks = null;
+                }
+            } else if (cf) {
+                if (tnf == NdefRecord.TNF_UNCHANGED) {
+                    throw new FormatException("首个分块不能使用 TNF_UNCHANGED");
+                }
+                chunks = new ByteArrayOutputStream();
+                chunks.write(payload);
+                chunkTnf = tnf;
+                chunkType = type;
+                chunkId = id;
+            } else {
+                records.add(newRecord(tnf, type, id, payload));
+            }
+
+            if (me) {
+                if (chunks != null) {
+                    throw new FormatException("结束记录仍在分块中");
+                }
+                return new NdefMessage(records.toArray(new NdefRecord[0]));
+            }
+        }
+    }
+
+    private static NdefRecord newRecord(short tnf, byte[] type, byte[] id, byte[] payload) throws FormatException {
+        try {
+            return new NdefRecord(tnf, type, id, payload);
+        } catch (IllegalArgumentException e) {
+            FormatException error = new FormatException(e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(bytes, offset, length - offset);
+            if (n < 0) throw new EOFException();
+            offset += n;
+        }
+        return bytes;
+    }
+
+    private void skipFully(int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            readByte(in);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.devhjz.ndefemulator.model;
 
+import android.nfc.FormatException;
 import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.util.Log;
@@ -17,12 +18,20 @@ public class NdefTag implements Serializable {
     private long createdTime;         // 创建时间
     private long lastModifiedTime;    // 最后修改时间
     private boolean isDefault;        // 是否为默认模拟标签
+    private byte[] ndefImage;         // 保存时编译好的 NDEF 消息镜像
+    private String contentHash;       // 编译镜像的 SHA-256
+    private int ndefSize;             // 编译镜像字节数，大镜像只在文件中保存
+    private boolean encrypted;        // 记录与镜像是否加密存储
+    private boolean unrecoverable;    // 加密标签无法用当前数据密钥解密
+    private String folderName;        // 所属文件夹，null 表示未归档
+    private List<String> labels = new ArrayList<>(); // 分类标记名称
     
     // 存储记录的列表
     private List<NdefRecordItem> records = new ArrayList<>();
 
     public static class NdefRecordItem implements Serializable {
-        public enum Type { TEXT, URL, APP }
+        // RAW 为导入的其他类型记录，content 为单条记录消息的十六进制编码，原样保留
+        public enum Type { TEXT, URL, APP, RAW }
         public Type type;
         public String content;
 
@@ -30,6 +39,58 @@ public class NdefTag implements Serializable {
             this.type = type;
             this.content = content;
         }
+
+        /**
+         * 编码为 NdefRecord，内容无效时抛出 IllegalArgumentException
+         */
+        public NdefRecord toNdefRecord() {
+            switch (type) {
+                case URL:
+                    return NdefRecord.createUri(content);
+                case APP:
+                    return NdefRecord.createApplicationRecord(content);
+                case RAW:
+                    try {
+                        return new NdefMessage(fromHex(content)).getRecords()[0];
+                    } catch (FormatException e) {
+                        throw new IllegalArgumentException("无效的原始记录: " + e.getMessage(), e);
+                    }
+                case TEXT:
+                default:
+                    return NdefRecord.createTextRecord("zh", content);
+            }
+        }
+
+        /**
+         * 以 RAW 类型原样保存任意记录
+         */
+        public static NdefRecordItem raw(NdefRecord record) {
+            return new NdefRecordItem(Type.RAW, toHex(new NdefMessage(record).toByteArray()));
+        }
+
+        private static String toHex(byte[] bytes) {
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+
+        private static byte[] fromHex(String hex) {
+            if (hex.length() % 2 != 0) {
+                throw new IllegalArgumentException("十六进制长度为奇数");
+            }
+            byte[] bytes = new byte[hex.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                int hi = Character.digit(hex.charAt(2 * i), 16);
+                int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (hi < 0 || lo < 0) {
+                    throw new IllegalArgumentException("非十六进制字符");
+                }
+                bytes[i] = (byte) ((hi << 4) | lo);
+            }
+            return bytes;
+        }
     }
 
     public NdefTag() {
@@ -47,25 +108,17 @@ public class NdefTag implements Serializable {
     }
 
     /**
-     * 将所有记录转换为 NdefMessage 的字节数组
+     * 将所有记录转换为 NdefMessage 的字节数组，优先使用保存时编译好的镜像（加密镜像除外）
      */
     public byte[] toNdefBytes() {
+        if (ndefImage != null && !encrypted) return ndefImage;
         if (records.isEmpty()) return null;
         
+        // 旧数据没有编译镜像，逐条编码
         List<NdefRecord> ndefRecords = new ArrayList<>();
         for (NdefRecordItem item : records) {
             try {
-                switch (item.type) {
-                    case TEXT:
-                        ndefRecords.add(NdefRecord.createTextRecord("zh", item.content));
-                        break;
-                    case URL:
-                        ndefRecords.add(NdefRecord.createUri(item.content));
-                        break;
-                    case APP:
-                        ndefRecords.add(NdefRecord.createApplicationRecord(item.content));
-                        break;
-                }
+                ndefRecords.add(item.toNdefRecord());
             } catch (Exception e) {
                 Log.e("NdefTag", "Error creating NDEF record", e);
             }
@@ -90,6 +143,20 @@ public class NdefTag implements Serializable {
     public void setDefault(boolean aDefault) { isDefault = aDefault; }
     public List<NdefRecordItem> getRecords() { return records; }
     public void setRecords(List<NdefRecordItem> records) { this.records = records; }
+    public byte[] getNdefImage() { return ndefImage; }
+    public void setNdefImage(byte[] ndefImage) { this.ndefImage = ndefImage; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public int getNdefSize() { return ndefSize; }
+    public void setNdefSize(int ndefSize) { this.ndefSize = ndefSize; }
+    public boolean isEncrypted() { return encrypted; }
+    public void setEncrypted(boolean encrypted) { this.encrypted = encrypted; }
+    public boolean isUnrecoverable() { return unrecoverable; }
+    public void setUnrecoverable(boolean unrecoverable) { this.unrecoverable = unrecoverable; }
+    public String getFolderName() { return folderName; }
+    public void setFolderName(String folderName) { this.folderName = folderName; }
+    public List<String> getLabels() { return labels; }
+    public void setLabels(List<String> labels) { this.labels = labels; }
 
     @Override
     public String toString() {
@@ -0,0 +1,20 @@
+package com.devhjz.ndefemulator.model;
+
+/**
+ * 标签文件夹，每个标签至多属于一个文件夹；tagCount 由数据库触发器维护
+ */
+public class TagFolder {
+    private final long id;
+    private final String name;
+    private final int tagCount;
+
+    public TagFolder(long id, String name, int tagCount) {
+        this.id = id;
+        this.name = name;
+        this.tagCount = tagCount;
+    }
+
+    public long getId() { return id; }
+    public String getName() { return name; }
+    public int getTagCount() { return tagCount; }
+}
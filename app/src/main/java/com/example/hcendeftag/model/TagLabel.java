@@ -0,0 +1,17 @@
+package com.devhjz.ndefemulator.model;
+
+/**
+ * 标签的分类标记，一个标签可以有多个
+ */
+public class TagLabel {
+    private final long id;
+    private final String name;
+
+    public TagLabel(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() { return id; }
+    public String getName() { return name; }
+}
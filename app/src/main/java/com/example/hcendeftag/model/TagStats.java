@@ -0,0 +1,29 @@
+package com.devhjz.ndefemulator.model;
+
+/**
+ * 单个标签的读取统计
+ */
+public class TagStats {
+    private final long tagId;
+    private final int tapCount;
+    private final int completeCount;
+    private final int partialCount;
+    private final int abortedCount;
+    private final long lastReadTime;  // 最近一次读取到 NDEF 数据的时间，0 表示从未读取
+
+    public TagStats(long tagId, int tapCount, int completeCount, int partialCount, int abortedCount, long lastReadTime) {
+        this.tagId = tagId;
+        this.tapCount = tapCount;
+        this.completeCount = completeCount;
+        this.partialCount = partialCount;
+        this.abortedCount = abortedCount;
+        this.lastReadTime = lastReadTime;
+    }
+
+    public long getTagId() { return tagId; }
+    public int getTapCount() { return tapCount; }
+    public int getCompleteCount() { return completeCount; }
+    public int getPartialCount() { return partialCount; }
+    public int getAbortedCount() { return abortedCount; }
+    public long getLastReadTime() { return lastReadTime; }
+}
@@ -0,0 +1,191 @@
+package com.devhjz.ndefemulator.security;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 标签内容的静态加密（AES-256-GCM）。
+ * 数据密钥由 AndroidKeyStore 中不可导出的主密钥包裹后保存在 SharedPreferences，
+ * 每个进程只解包一次并常驻内存，之后的加解密不再经过 Keystore。
+ * 主密钥不随备份迁移，保存包裹密钥的 tag_cipher.xml 也排除在备份之外；
+ * 包裹密钥仍无法解包时重新生成数据密钥，旧的加密标签无法解密
+ */
+public final class TagCipher {
+    private static final String TAG = "TagCipher";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String MASTER_KEY_ALIAS = "ndef_tag_master_key";
+    private static final String PREFS_NAME = "tag_cipher";
+    private static final String PREF_WRAPPED_KEY = "wrapped_key";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_BITS = 256;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    // 加密镜像的内容哈希前缀，使其与明文镜像的十六进制哈希分属不同的键。
+    // 是否加密以 ndef_tags.encrypted 列为准，不要根据前缀判断
+    public static final String ENCRYPTED_HASH_PREFIX = "enc:";
+
+    private static TagCipher instance;
+
+    private final SecretKey dataKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private TagCipher(SecretKey dataKey) {
+        this.dataKey = dataKey;
+    }
+
+    /**
+     * 获取进程内唯一实例，首次调用时解包（或生成）数据密钥
+     */
+    public static synchronized TagCipher getInstance(Context context) throws GeneralSecurityException {
+        if (instance == null) {
+            instance = new TagCipher(loadDataKey(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    private static SecretKey loadDataKey(Context context) throws GeneralSecurityException {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SecretKey masterKey = loadMasterKey();
+        String wrapped = prefs.getString(PREF_WRAPPED_KEY, null);
+        if (wrapped != null) {
+            byte[] raw = unwrap(masterKey, wrapped);
+            if (raw != null) {
+                try {
+                    return new SecretKeySpec(raw, "AES");
+                } finally {
+                    Arrays.fill(raw, (byte) 0);
+                }
+            }
+            // 主密钥已变（如从备份恢复到其他设备），旧数据密钥永远无法解包：丢弃后重新生成，
+            // 旧的加密标签由 NdefTagDatabase 标记为不可恢复
+            if (!prefs.edit().remove(PREF_WRAPPED_KEY).commit()) {
+                throw new GeneralSecurityException("无法删除失效的数据密钥");
+            }
+        }
+
+        byte[] raw = new byte[KEY_BITS / 8];
+        new SecureRandom().nextBytes(raw);
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, masterKey);
+            byte[] sealed = seal(cipher.getIV(), cipher.doFinal(raw));
+            // 必须同步写入，否则进程被杀时已用新密钥加密的数据将无法解密
+            if (!prefs.edit().putString(PREF_WRAPPED_KEY, Base64.encodeToString(sealed, Base64.NO_WRAP)).commit()) {
+                throw new GeneralSecurityException("无法保存数据密钥");
+            }
+            return new SecretKeySpec(raw, "AES");
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    /**
+     * 解包数据密钥，密文与主密钥不匹配时返回 null；Keystore 的其他错误照常抛出，避免误删仍有效的密钥
+     */
+    private static byte[] unwrap(SecretKey masterKey, String wrapped) throws GeneralSecurityException {
+        try {
+            byte[] sealed = Base64.decode(wrapped, Base64.NO_WRAP);
+            if (sealed.length < IV_LENGTH + TAG_BITS / 8) {
+                Log.w(TAG, "Wrapped data key is truncated, generating a new one");
+                return null;
+            }
+            return decrypt(masterKey, sealed);
+        } catch (AEADBadTagException | IllegalArgumentException e) {
+            Log.w(TAG, "Wrapped data key does not match the master key, generating a new one", e);
+            return null;
+        }
+    }
+
+    private static SecretKey loadMasterKey() throws GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        try {
+            keyStore.load(null);
+        } catch (IOException e) {
+            throw new GeneralSecurityException("无法打开 AndroidKeyStore", e);
+        }
+        KeyStore.Entry entry = keyStore.getEntry(MASTER_KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(MASTER_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(KEY_BITS)
+                .build());
+        return generator.generateKey();
+    }
+
+    /**
+     * 加密，返回 IV + 密文 + 认证标签
+     */
+    public byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_BITS, iv));
+        return seal(iv, cipher.doFinal(plain));
+    }
+
+    /**
+     * 解密 encrypt 的输出，数据被篡改或密钥不匹配时抛出 AEADBadTagException
+     */
+    public byte[] decrypt(byte[] sealed) throws GeneralSecurityException {
+        return decrypt(dataKey, sealed);
+    }
+
+    public String encryptString(String plain) throws GeneralSecurityException {
+        byte[] bytes = plain.getBytes(StandardCharsets.UTF_8);
+        try {
+            return Base64.encodeToString(encrypt(bytes), Base64.NO_WRAP);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    public String decryptString(String sealed) throws GeneralSecurityException {
+        byte[] bytes = decrypt(Base64.decode(sealed, Base64.NO_WRAP));
+        try {
+            return new String(bytes, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+        }
+    }
+
+    private static byte[] decrypt(SecretKey key, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < IV_LENGTH + TAG_BITS / 8) {
+            throw new GeneralSecurityException("密文长度无效: " + sealed.length);
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+        return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+    }
+
+    private static byte[] seal(byte[] iv, byte[] ciphertext) {
+        byte[] sealed = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, sealed, 0, iv.length);
+        System.arraycopy(ciphertext, 0, sealed, iv.length, ciphertext.length);
+        return sealed;
+    }
+}
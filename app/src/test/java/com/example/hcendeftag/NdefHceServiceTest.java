@@ -0,0 +1,129 @@
+package com.devhjz.ndefemulator;
+
+import android.content.Context;
+
+import com.devhjz.ndefemulator.compiler.CompiledImage;
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.compiler.TagSavePipeline;
+import com.devhjz.ndefemulator.database.NdefTagDatabase;
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * 通过 processCommandApdu 驱动 NdefHceService 的 Type 4 指令处理
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NdefHceServiceTest {
+
+    private static final byte[] SELECT_APPLICATION = {
+            0x00, (byte) 0xa4, 0x04, 0x00, 0x07, (byte) 0xd2, 0x76, 0x00, 0x00, (byte) 0x85, 0x01, 0x01, 0x00};
+    private static final byte[] SELECT_CAPABILITY_CONTAINER = {0x00, (byte) 0xa4, 0x00, 0x0c, 0x02, (byte) 0xe1, 0x03};
+    private static final byte[] SELECT_NDEF_FILE = {0x00, (byte) 0xa4, 0x00, 0x0c, 0x02, (byte) 0xe1, 0x04};
+    private static final byte[] SUCCESS_SW = {(byte) 0x90, 0x00};
+
+    // NLEN + 消息，超过 255 字节以覆盖 81/82 长度格式
+    private byte[] ndefFile;
+    private ServiceController<NdefHceService> controller;
+    private NdefHceService service;
+
+    @Before
+    public void setUp() throws Exception {
+        start(900);
+    }
+
+    /**
+     * 以 textLength 个字符的文本记录作为默认标签启动服务，并选择 NDEF 应用与文件
+     */
+    private void start(int textLength) throws Exception {
+        if (controller != null) controller.destroy();
+        Context context = RuntimeEnvironment.getApplication();
+        char[] text = new char[textLength];
+        Arrays.fill(text, 'n');
+        NdefTag tag = new NdefTag("large");
+        tag.addRecord(NdefTag.NdefRecordItem.Type.TEXT, new String(text));
+        CompiledImage image = NdefTagCompiler.compile(tag);
+        TagSavePipeline.attachImage(context, tag, image);
+        NdefTagDatabase database = new NdefTagDatabase(context);
+        database.setDefaultNdefTag(database.insertNdefTag(tag));
+        database.close();
+
+        byte[] message = image.getBytes();
+        ndefFile = new byte[message.length + 2];
+        ndefFile[0] = (byte) (message.length >> 8);
+        ndefFile[1] = (byte) message.length;
+        System.arraycopy(message, 0, ndefFile, 2, message.length);
+
+        controller = Robolectric.buildService(NdefHceService.class).create();
+        service = controller.get();
+        assertArrayEquals(SUCCESS_SW, service.processCommandApdu(SELECT_APPLICATION, null));
+        assertArrayEquals(SUCCESS_SW, service.processCommandApdu(SELECT_NDEF_FILE, null));
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void shortOdoReadUsesOneByteLengthPrefix() {
+        // 00 B1 00 00 | Lc 05 | 54 03 000010 | Le 00 (256)
+        byte[] response = service.processCommandApdu(new byte[]{0x00, (byte) 0xb1, 0x00, 0x00, 0x05,
+                0x54, 0x03, 0x00, 0x00, 0x10, 0x00}, null);
+        assertArrayEquals(new byte[]{0x53, (byte) 0x81, (byte) 0xfd}, Arrays.copyOf(response, 3));
+        assertArrayEquals(Arrays.copyOfRange(ndefFile, 0x10, 0x10 + 0xfd), Arrays.copyOfRange(response, 3, 3 + 0xfd));
+        assertArrayEquals(SUCCESS_SW, Arrays.copyOfRange(response, response.length - 2, response.length));
+    }
+
+    @Test
+    public void extendedOdoReadUsesLongFormLength() {
+        // 00 B1 00 00 | 扩展 Lc 00 0005 | 54 03 000000 | 扩展 Le 0400
+        byte[] response = service.processCommandApdu(new byte[]{0x00, (byte) 0xb1, 0x00, 0x00, 0x00, 0x00, 0x05,
+                0x54, 0x03, 0x00, 0x00, 0x00, 0x04, 0x00}, null);
+        int length = ndefFile.length;
+        assertArrayEquals(new byte[]{0x53, (byte) 0x82, (byte) (length >> 8), (byte) length}, Arrays.copyOf(response, 4));
+        assertArrayEquals(ndefFile, Arrays.copyOfRange(response, 4, 4 + length));
+        assertArrayEquals(SUCCESS_SW, Arrays.copyOfRange(response, 4 + length, response.length));
+    }
+
+    @Test
+    public void largestFileIsReadableWithFifteenBitOffsets() throws Exception {
+        // 文本记录开销 10 字节，消息 0x7FFD 字节，NDEF 文件 0x7FFF 字节
+        start(NdefTagCompiler.MAX_NDEF_MESSAGE_SIZE - 10);
+        assertEquals(NdefTagCompiler.MAX_NDEF_FILE_SIZE, ndefFile.length);
+
+        // CC 中声明的最大 NDEF 大小不超过映射版本 2.0 的 15 位偏移
+        assertArrayEquals(SUCCESS_SW, service.processCommandApdu(SELECT_CAPABILITY_CONTAINER, null));
+        byte[] cc = service.processCommandApdu(new byte[]{0x00, (byte) 0xb0, 0x00, 0x00, 0x0f}, null);
+        assertEquals(0x20, cc[2]);
+        assertEquals(0x7fff, ((cc[11] & 0xff) << 8) | (cc[12] & 0xff));
+        assertArrayEquals(SUCCESS_SW, service.processCommandApdu(SELECT_NDEF_FILE, null));
+
+        byte[] last = service.processCommandApdu(new byte[]{0x00, (byte) 0xb0, 0x7f, (byte) 0xf0, 0x10}, null);
+        assertArrayEquals(Arrays.copyOfRange(ndefFile, 0x7ff0, 0x7fff), Arrays.copyOf(last, 0x0f));
+        assertArrayEquals(SUCCESS_SW, Arrays.copyOfRange(last, 0x0f, last.length));
+    }
+
+    @Test
+    public void offsetAboveFifteenBitsIsRejected() {
+        // P1 最高位表示 SFI，不能当作偏移 0x8000 + P2 读取
+        assertArrayEquals(new byte[]{0x6a, (byte) 0x82},
+                service.processCommandApdu(new byte[]{0x00, (byte) 0xb0, (byte) 0x80, 0x00, 0x10}, null));
+        // B1 偏移超过文件末尾
+        assertArrayEquals(new byte[]{0x6a, (byte) 0x82}, service.processCommandApdu(new byte[]{0x00, (byte) 0xb1,
+                0x00, 0x00, 0x05, 0x54, 0x03, 0x00, (byte) 0x80, 0x00, 0x00}, null));
+    }
+}
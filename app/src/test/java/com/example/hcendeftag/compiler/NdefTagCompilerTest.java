@@ -0,0 +1,48 @@
+package com.devhjz.ndefemulator.compiler;
+
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * NdefTagCompiler 消息大小上限的边界测试：NDEF 文件 = NLEN + 消息，不能超过映射版本 2.0 可声明的 0x7FFF
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NdefTagCompilerTest {
+
+    // 长文本记录的开销：头部 1 + 类型长度 1 + 载荷长度 4 + 类型 "T" 1 + 状态字节 1 + 语言 "zh" 2
+    private static final int TEXT_RECORD_OVERHEAD = 10;
+
+    private static NdefTag textTag(int messageSize) {
+        char[] text = new char[messageSize - TEXT_RECORD_OVERHEAD];
+        Arrays.fill(text, 'a');
+        NdefTag tag = new NdefTag("boundary");
+        tag.addRecord(NdefTag.NdefRecordItem.Type.TEXT, new String(text));
+        return tag;
+    }
+
+    @Test
+    public void largestMessageFitsInNdefFile() throws NdefCompileException {
+        CompiledImage image = NdefTagCompiler.compile(textTag(0x7FFD));
+        assertEquals(0x7FFD, image.getSize());
+        assertEquals(NdefTagCompiler.MAX_NDEF_FILE_SIZE, image.getSize() + 2);
+    }
+
+    @Test
+    public void messageOverflowingNdefFileIsRejected() {
+        try {
+            NdefTagCompiler.compile(textTag(0x7FFE));
+            fail("0x7FFE 字节的消息加上 NLEN 超过 0x7FFF");
+        } catch (NdefCompileException e) {
+            assertEquals(-1, e.getRecordIndex());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.devhjz.ndefemulator.database;
+
+import android.content.Context;
+
+import com.devhjz.ndefemulator.analytics.TapEvent;
+import com.devhjz.ndefemulator.model.NdefTag;
+import com.devhjz.ndefemulator.model.TagFolder;
+import com.devhjz.ndefemulator.model.TagLabel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * NdefTagDatabase 的规模基准与回归测试（Robolectric，在主机 JVM 上运行）。
+ * 用固定种子生成合成标签库，测量每个操作的平均耗时、平均分配字节数和数据库文件大小，
+ * 超过 ndef_bench_thresholds.properties 中的阈值即失败。
+ * 默认的 ./gradlew test 不运行本测试，需加 -PndefBench。
+ *
+ * 系统属性：
+ * ndef.bench.sizes     标签库规模，逗号分隔，默认 1000,10000（100000 需显式指定）
+ * ndef.bench.enforce   为 false 时只输出结果不检查阈值
+ * ndef.bench.threshold.&lt;key&gt;  覆盖单个阈值
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NdefTagDatabaseScaleTest {
+
+    private static final long SEED = 0x4e444546L;
+    private static final String DEFAULT_SIZES = "1000,10000";
+    private static final String THRESHOLDS = "/ndef_bench_thresholds.properties";
+
+    // 每个操作的采样次数上限
+    private static final int LOOKUPS = 1000;
+    private static final int DEFAULT_SWITCHES = 100;
+    private static final int MUTATIONS = 500;
+    private static final int TAP_BATCHES = 20;
+    private static final int TAP_BATCH_SIZE = 50;
+    private static final int LIST_REPEATS = 3;
+    // 与 NdefImportPipeline 的批大小一致
+    private static final int IMPORT_BATCH_SIZE = 200;
+    private static final int IMPORT_BATCHES = 5;
+
+    private interface Operation {
+        void run(int i);
+    }
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} tags")
+    public static Collection<Object[]> sizes() {
+        List<Object[]> sizes = new ArrayList<>();
+        for (String size : System.getProperty("ndef.bench.sizes", DEFAULT_SIZES).split(",")) {
+            sizes.add(new Object[]{Integer.parseInt(size.trim())});
+        }
+        return sizes;
+    }
+
+    private final int size;
+    private final Properties thresholds = new Properties();
+    private final List<String> failures = new ArrayList<>();
+
+    public NdefTagDatabaseScaleTest(int size) {
+        this.size = size;
+    }
+
+    @Test
+    public void operationsStayWithinThresholds() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(THRESHOLDS)) {
+            assertNotNull("missing " + THRESHOLDS, in);
+            thresholds.load(in);
+        }
+
+        Context context = RuntimeEnvironment.getApplication();
+        NdefTagDatabase database = new NdefTagDatabase(context);
+        SyntheticTagGenerator generator = new SyntheticTagGenerator(SEED);
+        Random random = new Random(SEED);
+
+        // 预先生成标签，只测量数据库本身
+        List<NdefTag> tags = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tags.add(generator.next());
+        }
+        long[] ids = new long[size];
+
+        measure("insertNdefTag", size, i -> ids[i] = database.insertNdefTag(tags.get(i)));
+        long dbSize = context.getDatabasePath("ndef_tags_v2.db").length();
+        check("dbSize.bytesPerTag", (double) dbSize / size, "%.0f B/tag");
+
+        measure("getAllNdefTags", LIST_REPEATS, i -> assertEquals(size, database.getAllNdefTags().size()));
+        List<TagFolder> folders = database.getAllFolders();
+        measure("getNdefTagsInFolder", SyntheticTagGenerator.FOLDERS, i -> {
+            TagFolder folder = folders.get(i % folders.size());
+            assertEquals(folder.getTagCount(), database.getNdefTagsInFolder(folder.getId()).size());
+        });
+        measure("getAllFolders", LIST_REPEATS, i -> assertEquals(folders.size(), database.getAllFolders().size()));
+        List<TagLabel> labels = database.getAllLabels();
+        measure("getNdefTagsWithLabel", SyntheticTagGenerator.LABELS,
+                i -> assertFalse(database.getNdefTagsWithLabel(labels.get(i % labels.size()).getId()).isEmpty()));
+        measure("getAllLabels", LIST_REPEATS, i -> assertEquals(labels.size(), database.getAllLabels().size()));
+        measure("getNdefTagById", Math.min(size, LOOKUPS),
+                i -> assertNotNull(database.getNdefTagById(ids[random.nextInt(size)])));
+        measure("getNdefTagByIdWithoutImage", Math.min(size, LOOKUPS),
+                i -> assertNotNull(database.getNdefTagById(ids[random.nextInt(size)], false)));
+        measure("getNdefImage", Math.min(size, LOOKUPS),
+                i -> {
+                    String hash = tags.get(random.nextInt(size)).getContentHash();
+                    if (hash != null) database.getNdefImage(hash);
+                });
+        measure("setDefaultNdefTag", DEFAULT_SWITCHES, i -> database.setDefaultNdefTag(ids[random.nextInt(size)]));
+        measure("getDefaultNdefTag", DEFAULT_SWITCHES, i -> assertNotNull(database.getDefaultNdefTag()));
+
+        List<TapEvent> batch = new ArrayList<>(TAP_BATCH_SIZE);
+        measure("insertTapEvents", TAP_BATCHES, i -> {
+            batch.clear();
+            for (int j = 0; j < TAP_BATCH_SIZE; j++) {
+                batch.add(new TapEvent(ids[random.nextInt(size)], System.currentTimeMillis(),
+                        TapEvent.Outcome.values()[random.nextInt(TapEvent.Outcome.values().length)]));
+            }
+            database.insertTapEvents(batch);
+        });
+        measure("getAllTagStats", LIST_REPEATS, i -> database.getAllTagStats());
+
+        int mutations = Math.min(size, MUTATIONS);
+        measure("updateNdefTag", mutations, i -> {
+            NdefTag tag = generator.next();
+            tag.setId(ids[i]);
+            assertEquals(1, database.updateNdefTag(tag));
+        });
+        measure("deleteNdefTag", mutations, i -> assertEquals(1, database.deleteNdefTag(ids[size - 1 - i])));
+
+        // 导入写入线程的批量插入，按批计时
+        List<List<NdefTag>> imports = new ArrayList<>(IMPORT_BATCHES);
+        for (int i = 0; i < IMPORT_BATCHES; i++) {
+            List<NdefTag> importBatch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            for (int j = 0; j < IMPORT_BATCH_SIZE; j++) {
+                importBatch.add(generator.next());
+            }
+            imports.add(importBatch);
+        }
+        measure("insertNdefTags", IMPORT_BATCHES,
+                i -> assertEquals(IMPORT_BATCH_SIZE, database.insertNdefTags(imports.get(i))));
+
+        database.close();
+        if (!failures.isEmpty() && Boolean.parseBoolean(System.getProperty("ndef.bench.enforce", "true"))) {
+            fail(size + " tags: " + String.join("; ", failures));
+        }
+    }
+
+    /**
+     * 执行 count 次操作，输出并检查平均耗时 (ms) 与平均分配字节数
+     */
+    private void measure(String name, int count, Operation operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocStart = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            operation.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocStart;
+
+        check(name + ".ms", elapsed / 1e6 / count, "%.3f ms/op");
+        check(name + ".alloc", (double) allocated / count, "%.0f B/op");
+    }
+
+    /**
+     * 阈值 = base + per1k * (标签数 / 1000)，未配置的指标只输出不检查
+     */
+    private void check(String key, double value, String format) {
+        String base = threshold(key + ".base");
+        String per1k = threshold(key + ".per1k");
+        String line = String.format(Locale.ROOT, "[%d tags] %-40s " + format, size, key, value);
+        if (base == null && per1k == null) {
+            System.out.println(line);
+            return;
+        }
+        double limit = (base == null ? 0 : Double.parseDouble(base))
+                + (per1k == null ? 0 : Double.parseDouble(per1k)) * size / 1000.0;
+        System.out.println(String.format(Locale.ROOT, "%s (limit %.3f)", line, limit));
+        if (value > limit) {
+            failures.add(String.format(Locale.ROOT, "%s = %.3f > %.3f", key, value, limit));
+        }
+    }
+
+    private String threshold(String key) {
+        return System.getProperty("ndef.bench.threshold." + key, thresholds.getProperty(key));
+    }
+}
@@ -0,0 +1,130 @@
+package com.devhjz.ndefemulator.database;
+
+import android.content.Context;
+
+import com.devhjz.ndefemulator.analytics.TapEvent;
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.compiler.TagSavePipeline;
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * NdefTagDatabase 文件夹、分类标记与读卡统计的读写测试
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NdefTagDatabaseTest {
+
+    private Context context;
+    private NdefTagDatabase database;
+    private long id;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        database = new NdefTagDatabase(context);
+        NdefTag tag = new SyntheticTagGenerator(1).next();
+        tag.setFolderName("工作");
+        tag.setLabels(Arrays.asList("门禁", "名片"));
+        id = database.insertNdefTag(tag);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void singleTagQueriesLoadGroups() {
+        for (NdefTag tag : Arrays.asList(database.getNdefTagById(id), database.getNdefTagById(id, false))) {
+            assertEquals("工作", tag.getFolderName());
+            assertEquals(2, tag.getLabels().size());
+            assertTrue(tag.getLabels().containsAll(Arrays.asList("门禁", "名片")));
+        }
+    }
+
+    @Test
+    public void loadThenUpdateKeepsGroups() {
+        NdefTag tag = database.getNdefTagById(id);
+        tag.setName("renamed");
+        assertEquals(1, database.updateNdefTag(tag));
+
+        NdefTag updated = database.getNdefTagById(id, false);
+        assertEquals("renamed", updated.getName());
+        assertEquals("工作", updated.getFolderName());
+        assertTrue(updated.getLabels().containsAll(Arrays.asList("门禁", "名片")));
+        assertEquals(1, database.getAllFolders().get(0).getTagCount());
+    }
+
+    @Test
+    public void labelContainingSeparatorIsRejected() {
+        NdefTag tag = new SyntheticTagGenerator(2).next();
+        tag.setLabels(Arrays.asList("a" + NdefTagDatabase.LABEL_SEPARATOR + "b"));
+        try {
+            database.insertNdefTag(tag);
+            fail("分类标记包含分隔符");
+        } catch (IllegalArgumentException expected) {
+            // 未写入任何行
+        }
+        assertEquals(1, database.getAllNdefTags().size());
+        assertEquals(2, database.getAllLabels().size());
+    }
+
+    private NdefTag largeTag(String name) throws Exception {
+        char[] text = new char[NdefImageFiles.LARGE_PAYLOAD_THRESHOLD];
+        Arrays.fill(text, 'x');
+        NdefTag tag = new NdefTag(name);
+        tag.addRecord(NdefTag.NdefRecordItem.Type.TEXT, new String(text));
+        TagSavePipeline.attachImage(context, tag, NdefTagCompiler.compile(tag));
+        return tag;
+    }
+
+    @Test
+    public void imageFileFollowsReferenceCount() throws Exception {
+        NdefTag first = largeTag("first");
+        File file = NdefImageFiles.fileFor(context, first.getContentHash());
+        assertFalse(file.exists());
+
+        // 文件在引用镜像时写入，内容相同的标签共享同一文件
+        long firstId = database.insertNdefTag(first);
+        assertTrue(file.exists());
+        assertEquals(first.getNdefSize() + 2, file.length());
+        NdefTag second = largeTag("second");
+        assertEquals(1, database.insertNdefTags(Collections.singletonList(second)));
+
+        assertEquals(1, database.deleteNdefTag(firstId));
+        assertTrue(file.exists());
+        assertEquals(1, database.deleteNdefTag(second.getId()));
+        assertFalse(file.exists());
+
+        // 计数归零后再次引用同一内容时重新写入
+        database.insertNdefTag(largeTag("third"));
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void tapEventsAfterDeleteDoNotRecreateStats() {
+        database.insertTapEvents(Collections.singletonList(
+                new TapEvent(id, System.currentTimeMillis(), TapEvent.Outcome.COMPLETE)));
+        assertEquals(1, database.getAllTagStats().get(id).getTapCount());
+
+        assertEquals(1, database.deleteNdefTag(id));
+        // 删除前排队的事件在删除后才写入
+        database.insertTapEvents(Collections.singletonList(
+                new TapEvent(id, System.currentTimeMillis(), TapEvent.Outcome.COMPLETE)));
+        assertFalse(database.getAllTagStats().containsKey(id));
+    }
+}
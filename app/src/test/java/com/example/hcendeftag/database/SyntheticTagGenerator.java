@@ -0,0 +1,101 @@
+package com.devhjz.ndefemulator.database;
+
+import com.devhjz.ndefemulator.compiler.CompiledImage;
+import com.devhjz.ndefemulator.compiler.NdefCompileException;
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 以固定种子生成的合成标签库，同一种子总是生成相同的标签序列。
+ * 一部分标签复用之前的记录列表，用于覆盖内容去重的路径；标签随机分布在若干文件夹和分类标记中
+ */
+public class SyntheticTagGenerator {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+    private static final double DUPLICATE_RATIO = 0.1;
+    private static final int MAX_RECORDS = 12;
+    public static final int FOLDERS = 20;
+    public static final int LABELS = 50;
+    private static final int MAX_LABELS = 3;
+    private static final double UNFILED_RATIO = 0.3;
+
+    private final Random random;
+    private final List<List<NdefTag.NdefRecordItem>> history = new ArrayList<>();
+    private int counter;
+
+    public SyntheticTagGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public NdefTag next() {
+        NdefTag tag = new NdefTag("tag-" + (counter++));
+        if (!history.isEmpty() && random.nextDouble() < DUPLICATE_RATIO) {
+            tag.setRecords(new ArrayList<>(history.get(random.nextInt(history.size()))));
+        } else {
+            int count = 1 + random.nextInt(MAX_RECORDS);
+            for (int i = 0; i < count; i++) {
+                tag.getRecords().add(nextRecord());
+            }
+            if (history.size() < 1000) {
+                history.add(tag.getRecords());
+            }
+        }
+        if (random.nextDouble() >= UNFILED_RATIO) {
+            tag.setFolderName("folder-" + random.nextInt(FOLDERS));
+        }
+        int labels = random.nextInt(MAX_LABELS + 1);
+        for (int i = 0; i < labels; i++) {
+            tag.getLabels().add("label-" + random.nextInt(LABELS));
+        }
+        compile(tag);
+        return tag;
+    }
+
+    private NdefTag.NdefRecordItem nextRecord() {
+        switch (random.nextInt(3)) {
+            case 0:
+                return new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.URL,
+                        "https://" + word(8) + ".example.com/" + word(random.nextInt(60) + 1) + "?id=" + random.nextInt(100000));
+            case 1:
+                return new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.APP,
+                        "com." + identifier(6) + "." + identifier(8));
+            default:
+                return new NdefTag.NdefRecordItem(NdefTag.NdefRecordItem.Type.TEXT, word(random.nextInt(120) + 1));
+        }
+    }
+
+    /**
+     * 与 TagSavePipeline 一致地附上编译镜像，大镜像不在规模测试范围内
+     */
+    private void compile(NdefTag tag) {
+        try {
+            CompiledImage image = NdefTagCompiler.compile(tag);
+            if (!NdefImageFiles.isLarge(image.getSize())) {
+                tag.setNdefImage(image.getBytes());
+                tag.setContentHash(image.getContentHash());
+                tag.setNdefSize(image.getSize());
+            }
+        } catch (NdefCompileException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 以字母开头，可作为包名的一段
+     */
+    private String identifier(int length) {
+        return (char) ('a' + random.nextInt(26)) + word(length - 1);
+    }
+
+    private String word(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+}
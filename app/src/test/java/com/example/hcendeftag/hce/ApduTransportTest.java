@@ -0,0 +1,153 @@
+package com.devhjz.ndefemulator.hce;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * ApduTransport 命令链重组与 GET RESPONSE 拆分的单元测试
+ */
+public class ApduTransportTest {
+
+    private byte[] lastCommand;
+    private int lastNe;
+    private int lastDataOffset;
+    private int lastLc;
+    private byte[] file;
+    private ApduTransport transport;
+
+    @Before
+    public void setUp() {
+        file = new byte[3000];
+        for (int i = 0; i < file.length; i++) {
+            file[i] = (byte) i;
+        }
+        // 模拟 READ_BINARY：从 offset 开始返回最多 ne 字节
+        transport = new ApduTransport((apdu, dataOffset, lc, ne) -> {
+            lastCommand = apdu;
+            lastDataOffset = dataOffset;
+            lastLc = lc;
+            lastNe = ne;
+            int offset = ((apdu[2] & 0xff) << 8) | (apdu[3] & 0xff);
+            int length = Math.min(ne, file.length - offset);
+            byte[] response = new byte[length + 2];
+            System.arraycopy(file, offset, response, 0, length);
+            response[length] = (byte) 0x90;
+            return response;
+        });
+    }
+
+    @Test
+    public void shortLeZeroMeans256() {
+        byte[] response = transport.process(new byte[]{0x00, (byte) 0xb0, 0x00, 0x00, 0x00});
+        assertEquals(256, lastNe);
+        assertEquals(258, response.length);
+        assertEquals((byte) 0x90, response[256]);
+    }
+
+    @Test
+    public void chainedCommandIsReassembled() {
+        byte[] first = {0x10, (byte) 0xa4, 0x04, 0x00, 0x03, (byte) 0xd2, 0x76, 0x00};
+        byte[] last = {0x00, (byte) 0xa4, 0x04, 0x00, 0x04, 0x00, (byte) 0x85, 0x01, 0x01, 0x00};
+        assertArrayEquals(new byte[]{(byte) 0x90, 0x00}, transport.process(first));
+        assertNull(lastCommand);
+
+        transport.process(last);
+        byte[] expected = {0x00, (byte) 0xa4, 0x04, 0x00, 0x07,
+                (byte) 0xd2, 0x76, 0x00, 0x00, (byte) 0x85, 0x01, 0x01, 0x00};
+        assertArrayEquals(expected, lastCommand);
+        assertEquals(5, lastDataOffset);
+        assertEquals(7, lastLc);
+    }
+
+    @Test
+    public void chainWithDifferentInsIsRejected() {
+        transport.process(new byte[]{0x10, (byte) 0xa4, 0x04, 0x00, 0x01, 0x01});
+        byte[] response = transport.process(new byte[]{0x00, (byte) 0xb0, 0x00, 0x00, 0x01, 0x02});
+        assertArrayEquals(new byte[]{0x68, (byte) 0x83}, response);
+    }
+
+    @Test
+    public void extendedResponseIsDrainedWithGetResponse() {
+        // 扩展 Le = 2000
+        byte[] response = transport.process(new byte[]{0x00, (byte) 0xb0, 0x00, 0x00, 0x00, 0x07, (byte) 0xd0});
+        assertEquals(2000, lastNe);
+        assertEquals(1024 + 2, response.length);
+        assertEquals(0x61, response[1024]);
+        assertEquals(0x00, response[1025]);
+
+        byte[] received = Arrays.copyOf(response, 1024);
+        int total = 1024;
+        byte[] sw = {response[1024], response[1025]};
+        while (sw[0] == 0x61) {
+            byte[] next = transport.process(new byte[]{0x00, (byte) 0xc0, 0x00, 0x00, 0x00});
+            int length = next.length - 2;
+            received = Arrays.copyOf(received, total + length);
+            System.arraycopy(next, 0, received, total, length);
+            total += length;
+            sw = new byte[]{next[length], next[length + 1]};
+        }
+        assertArrayEquals(new byte[]{(byte) 0x90, 0x00}, sw);
+        assertArrayEquals(Arrays.copyOf(file, 2000), received);
+    }
+
+    @Test
+    public void extendedLeOdoReadUsesLongFormLength() {
+        ResponseSlices slices = new ResponseSlices(file);
+        // READ_BINARY (B1)，扩展 Lc = 5，扩展 Le = 0x1000
+        ApduTransport odoTransport = new ApduTransport((apdu, dataOffset, lc, ne) -> {
+            assertEquals(5, lc);
+            int offset = ((apdu[dataOffset + 2] & 0xff) << 16) | ((apdu[dataOffset + 3] & 0xff) << 8)
+                    | (apdu[dataOffset + 4] & 0xff);
+            return slices.readOdo(offset, ne);
+        });
+        byte[] response = odoTransport.process(new byte[]{0x00, (byte) 0xb1, 0x00, 0x00, 0x00, 0x00, 0x05,
+                0x54, 0x03, 0x00, 0x00, 0x0a, 0x10, 0x00});
+
+        byte[] received = Arrays.copyOf(response, response.length - 2);
+        byte[] sw = {response[response.length - 2], response[response.length - 1]};
+        while (sw[0] == 0x61) {
+            byte[] next = odoTransport.process(new byte[]{0x00, (byte) 0xc0, 0x00, 0x00, 0x00});
+            int length = next.length - 2;
+            int total = received.length;
+            received = Arrays.copyOf(received, total + length);
+            System.arraycopy(next, 0, received, total, length);
+            sw = new byte[]{next[length], next[length + 1]};
+        }
+        assertArrayEquals(new byte[]{(byte) 0x90, 0x00}, sw);
+
+        // 53 82 HH LL + 数据，总长不超过 Le
+        assertTrue(received.length <= 0x1000);
+        assertEquals(0x53, received[0]);
+        assertEquals((byte) 0x82, received[1]);
+        int length = ((received[2] & 0xff) << 8) | (received[3] & 0xff);
+        assertEquals(Math.min(0x1000 - 4, file.length - 10), length);
+        assertEquals(4 + length, received.length);
+        assertArrayEquals(Arrays.copyOfRange(file, 10, 10 + length), Arrays.copyOfRange(received, 4, received.length));
+    }
+
+    @Test
+    public void odoReadLengthEncoding() {
+        ResponseSlices slices = new ResponseSlices(file);
+        byte[] response = slices.readOdo(0, 256);
+        assertArrayEquals(new byte[]{0x53, (byte) 0x81, (byte) 0xfd}, Arrays.copyOf(response, 3));
+        assertEquals(256 + 2, response.length);
+
+        response = slices.readOdo(0, 300);
+        assertArrayEquals(new byte[]{0x53, (byte) 0x82, 0x01, 0x28}, Arrays.copyOf(response, 4));
+        assertEquals(300 + 2, response.length);
+
+        response = slices.readOdo(file.length - 5, 0x1000);
+        assertArrayEquals(new byte[]{0x53, 0x05}, Arrays.copyOf(response, 2));
+        assertEquals(2 + 5 + 2, response.length);
+    }
+
+    @Test
+    public void getResponseWithoutPendingDataFails() {
+        byte[] response = transport.process(new byte[]{0x00, (byte) 0xc0, 0x00, 0x00, 0x10});
+        assertArrayEquals(new byte[]{0x69, (byte) 0x85}, response);
+    }
+}
@@ -0,0 +1,130 @@
+package com.devhjz.ndefemulator.hce;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+/**
+ * 读卡器指纹、MLe 探测与 ReaderProfileStore 淘汰的单元测试
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ReaderProfileTest {
+
+    private static final int NDEF_FILE_LENGTH = 200;
+
+    /**
+     * 模拟一次标准读取：SELECT 应用、CC、NDEF，再以 le 为步长读取 NDEF 文件
+     */
+    private static ReaderSession session(int le, int readLength) {
+        ReaderSession session = new ReaderSession();
+        session.onSelect('A');
+        session.onSelect('C');
+        session.onRead(false, 0, 15);
+        session.onSelect('N');
+        for (int offset = 0; offset < readLength; offset += le) {
+            session.onRead(true, offset, le);
+        }
+        return session;
+    }
+
+    @Test
+    public void fingerprintEndsAtFirstRead() {
+        ReaderSession session = session(ReaderProfile.DEFAULT_MLE, NDEF_FILE_LENGTH);
+        assertTrue(session.isFingerprintComplete());
+        assertEquals("A.C.R15", session.getFingerprint());
+        assertTrue(session.isNdefReadComplete(NDEF_FILE_LENGTH));
+        assertFalse(session(ReaderProfile.DEFAULT_MLE, 100).isNdefReadComplete(NDEF_FILE_LENGTH));
+    }
+
+    @Test
+    public void readerUsingFullMleIsProbedWithLargerMle() {
+        ReaderProfile profile = new ReaderProfile("A.C.R15");
+        profile.onSessionEnd(session(ReaderProfile.DEFAULT_MLE, NDEF_FILE_LENGTH), ReaderProfile.DEFAULT_MLE, true);
+        assertEquals(ReaderProfile.MAX_MLE, profile.getPreferredMle());
+        assertFalse(profile.getReadPattern().isEmpty());
+
+        // 探测成功，保持较大的 MLe
+        profile.onSessionEnd(session(ReaderProfile.MAX_MLE, NDEF_FILE_LENGTH), ReaderProfile.MAX_MLE, true);
+        assertEquals(ReaderProfile.MAX_MLE, profile.getPreferredMle());
+        assertEquals(2, profile.getCompletedSessions());
+    }
+
+    @Test
+    public void failedProbeFallsBackAndIsNotRetried() {
+        ReaderProfile profile = new ReaderProfile("A.C.R15");
+        profile.onSessionEnd(session(ReaderProfile.DEFAULT_MLE, NDEF_FILE_LENGTH), ReaderProfile.DEFAULT_MLE, true);
+        profile.onSessionEnd(session(ReaderProfile.MAX_MLE, 100), ReaderProfile.MAX_MLE, false);
+        assertEquals(ReaderProfile.DEFAULT_MLE, profile.getPreferredMle());
+        assertTrue(profile.getReadPattern().isEmpty());
+
+        profile.onSessionEnd(session(ReaderProfile.DEFAULT_MLE, NDEF_FILE_LENGTH), ReaderProfile.DEFAULT_MLE, true);
+        assertEquals(ReaderProfile.DEFAULT_MLE, profile.getPreferredMle());
+    }
+
+    @Test
+    public void readerNotUsingFullMleIsNotProbed() {
+        ReaderProfile profile = new ReaderProfile("A.C.R15");
+        profile.onSessionEnd(session(0x20, NDEF_FILE_LENGTH), ReaderProfile.DEFAULT_MLE, true);
+        assertEquals(ReaderProfile.DEFAULT_MLE, profile.getPreferredMle());
+    }
+
+    @Test
+    public void profileSurvivesJsonRoundTrip() throws Exception {
+        ReaderProfile profile = new ReaderProfile("A.C.R15");
+        profile.onSessionEnd(session(ReaderProfile.DEFAULT_MLE, NDEF_FILE_LENGTH), ReaderProfile.DEFAULT_MLE, true);
+
+        ReaderProfile loaded = ReaderProfile.fromJson(profile.toJson());
+        assertEquals(profile.getFingerprint(), loaded.getFingerprint());
+        assertEquals(profile.getPreferredMle(), loaded.getPreferredMle());
+        assertEquals(profile.getLastSeen(), loaded.getLastSeen());
+        assertEquals(profile.getReadPattern(), loaded.getReadPattern());
+    }
+
+    @Test
+    public void patternKeyKeepsTwentyFourBitOffsets() throws Exception {
+        // B1 的偏移可达 24 位，左移 13 位后超出 int
+        ReaderSession session = new ReaderSession();
+        session.onRead(true, 0xfffff0, ReaderProfile.MAX_MLE);
+        session.onRead(true, 0x7ff0, ReaderProfile.MAX_MLE);
+        long high = session.getReadPattern().get(0);
+        assertNotEquals(high, (long) session.getReadPattern().get(1));
+        assertEquals(ResponseSlices.key(0xfffff0, ReaderProfile.MAX_MLE), high);
+
+        ReaderProfile profile = new ReaderProfile("A.C.R255");
+        profile.onSessionEnd(session, ReaderProfile.DEFAULT_MLE, true);
+        assertEquals(profile.getReadPattern(), ReaderProfile.fromJson(profile.toJson()).getReadPattern());
+    }
+
+    @Test
+    public void storeEvictsLeastRecentlyUsedReaders() {
+        Context context = RuntimeEnvironment.getApplication();
+        ReaderProfileStore store = new ReaderProfileStore(context);
+        ReaderProfile kept = store.get("reader-0");
+        kept.onSessionEnd(new ReaderSession(), ReaderProfile.DEFAULT_MLE, true);
+        store.save(kept);
+        for (int i = 1; i < ReaderProfileStore.MAX_PROFILES * 3; i++) {
+            // 反复使用的读卡器不被淘汰
+            store.get("reader-0");
+            ReaderProfile profile = store.get("reader-" + i);
+            profile.onSessionEnd(new ReaderSession(), ReaderProfile.DEFAULT_MLE, true);
+            store.save(profile);
+        }
+        assertEquals(ReaderProfileStore.MAX_PROFILES, store.size());
+        assertSame(kept, store.get("reader-0"));
+
+        // 持久化的配置同样有上限：保留最近使用的读卡器，被淘汰的从 SharedPreferences 中删除
+        ReaderProfileStore reloaded = new ReaderProfileStore(context);
+        assertEquals(ReaderProfileStore.MAX_PROFILES, reloaded.size());
+        assertEquals(1, reloaded.get("reader-0").getSessions());
+        assertEquals(1, reloaded.get("reader-" + (ReaderProfileStore.MAX_PROFILES * 3 - 1)).getSessions());
+        assertEquals(0, reloaded.get("reader-1").getSessions());
+        assertEquals(ReaderProfileStore.MAX_PROFILES, reloaded.size());
+    }
+}
@@ -0,0 +1,159 @@
+package com.devhjz.ndefemulator.ingest;
+
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.nfc.NdefRecord;
+
+import com.devhjz.ndefemulator.compiler.NdefTagCompiler;
+import com.devhjz.ndefemulator.model.NdefTag;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * NdefStreamParser 封装识别、分块重组以及 NdefTagCompiler.decompile 映射的单元测试
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class NdefStreamParserTest {
+
+    private static NdefStreamParser parser(byte[] data, String name) throws IOException {
+        return NdefStreamParser.open(new ByteArrayInputStream(data), name);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void bareMessagesAreSplitOnMessageEnd() throws Exception {
+        NdefMessage first = new NdefMessage(NdefRecord.createUri("https://example.com"));
+        NdefMessage second = new NdefMessage(NdefRecord.createTextRecord("zh", "你好"),
+                NdefRecord.createApplicationRecord("com.example.app"));
+        byte[] a = first.toByteArray();
+        byte[] b = second.toByteArray();
+        byte[] data = new byte[a.length + b.length];
+        System.arraycopy(a, 0, data, 0, a.length);
+        System.arraycopy(b, 0, data, a.length, b.length);
+
+        NdefStreamParser parser = parser(data, "dump.bin");
+        assertEquals(first, parser.next());
+        assertEquals(second, parser.next());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void chunkedRecordIsReassembled() throws Exception {
+        // MIME 记录 "a/b"，ID "1"，载荷 "hello" 分三块，首块使用 4 字节长度
+        byte[] data = bytes(
+                0xa2 | 0x08, 3, 0, 0, 0, 2, 1, 'a', '/', 'b', '1', 'h', 'e',
+                0x36, 0, 2, 'l', 'l',
+                0x56, 0, 1, 'o');
+        NdefMessage message = parser(data, "chunked.bin").next();
+
+        assertEquals(1, message.getRecords().length);
+        NdefRecord record = message.getRecords()[0];
+        assertEquals(NdefRecord.TNF_MIME_MEDIA, record.getTnf());
+        assertArrayEquals("a/b".getBytes(StandardCharsets.US_ASCII), record.getType());
+        assertArrayEquals("1".getBytes(StandardCharsets.US_ASCII), record.getId());
+        assertArrayEquals("hello".getBytes(StandardCharsets.US_ASCII), record.getPayload());
+    }
+
+    @Test(expected = FormatException.class)
+    public void unterminatedChunkIsRejected() throws Exception {
+        parser(bytes(0xf2, 3, 1, 'a', '/', 'b', 'x'), "bad.bin").next();
+    }
+
+    @Test
+    public void tlvDumpSkipsNullAndStopsAtTerminator() throws Exception {
+        NdefMessage message = new NdefMessage(NdefRecord.createUri("https://example.com/tlv"));
+        byte[] ndef = message.toByteArray();
+        byte[] data = new byte[ndef.length + 8];
+        int i = 0;
+        data[i++] = 0x00;
+        data[i++] = 0x01;            // Lock Control TLV
+        data[i++] = 0x01;
+        data[i++] = 0x55;
+        data[i++] = 0x03;
+        data[i++] = (byte) ndef.length;
+        System.arraycopy(ndef, 0, data, i, ndef.length);
+        i += ndef.length;
+        data[i++] = (byte) 0xfe;
+        data[i] = 0x03;              // 终止符之后的数据不再解析
+
+        NdefStreamParser parser = parser(data, "tag.bin");
+        assertEquals(message, parser.next());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void hexDumpIsDecoded() throws Exception {
+        byte[] ndef = new NdefMessage(NdefRecord.createTextRecord("zh", "测试")).toByteArray();
+        StringBuilder hex = new StringBuilder("# exported dump\n");
+        for (byte b : ndef) {
+            hex.append(String.format(Locale.ROOT, "0x%02X, ", b & 0xff));
+        }
+
+        NdefMessage message = parser(hex.toString().getBytes(StandardCharsets.US_ASCII), "dump").next();
+        assertArrayEquals(ndef, message.toByteArray());
+    }
+
+    @Test
+    public void nlenFramingReadsLengthPrefixedMessages() throws Exception {
+        byte[] ndef = new NdefMessage(NdefRecord.createUri("https://example.com")).toByteArray();
+        byte[] data = new byte[ndef.length + 4];
+        data[1] = (byte) ndef.length;
+        System.arraycopy(ndef, 0, data, 2, ndef.length);
+        // 末尾 NLEN = 0 表示空消息，应被跳过
+
+        NdefStreamParser parser = parser(data, "tag.ndef");
+        assertArrayEquals(ndef, parser.next().toByteArray());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void longZeroPaddingIsSkippedWithoutRecursion() throws Exception {
+        byte[] ndef = new NdefMessage(NdefRecord.createUri("https://example.com")).toByteArray();
+        // 5 万个 NLEN = 0 的空条目之后才是消息
+        int padding = 100000;
+        byte[] data = new byte[padding + 2 + ndef.length + padding];
+        data[padding + 1] = (byte) ndef.length;
+        System.arraycopy(ndef, 0, data, padding + 2, ndef.length);
+
+        NdefStreamParser parser = parser(data, "padded.ndef");
+        assertArrayEquals(ndef, parser.next().toByteArray());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void decompileMapsOnlyWhenReencodingIsIdentical() {
+        NdefRecord text = NdefRecord.createTextRecord("zh", "你好");
+        NdefTag.NdefRecordItem item = NdefTagCompiler.decompile(text);
+        assertEquals(NdefTag.NdefRecordItem.Type.TEXT, item.type);
+        assertEquals(text, item.toNdefRecord());
+
+        // 语言不是 zh 的文本记录无法按 TEXT 还原，保留原始字节
+        NdefRecord english = NdefRecord.createTextRecord("en", "hello");
+        item = NdefTagCompiler.decompile(english);
+        assertEquals(NdefTag.NdefRecordItem.Type.RAW, item.type);
+        assertEquals(english, item.toNdefRecord());
+
+        NdefRecord external = NdefRecord.createExternal("example.com", "data", bytes(1, 2, 3));
+        item = NdefTagCompiler.decompile(external);
+        assertEquals(NdefTag.NdefRecordItem.Type.RAW, item.type);
+        assertEquals(external, item.toNdefRecord());
+    }
+}